@@ -0,0 +1,86 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.math.Vector2;
+
+import dig.MapResources;
+import dig.ProceduralChunkGenerator;
+import entities.TileCollider;
+
+/**
+ * TileCollider.move through generated terrain, the path every Hero takes every tick
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollisionBenchmark {
+	private static final long SEED = 1;
+	private static final float WIDTH = 0.8f, HEIGHT = 1.4f;
+
+	private MapResources world;
+	private TileCollider collider;
+	private ProceduralChunkGenerator generator;
+	private final Vector2 position = new Vector2();
+	private final Vector2 velocity = new Vector2();
+	private int column;
+
+	@Setup
+	public void setUp() {
+		generator = new ProceduralChunkGenerator(SEED, 2);
+		world = MapResources.getInstance();
+		world.create(SEED, generator, null);
+		world.setViewDistance(0);
+		world.update(0, -64, 256, 64);
+		world.finishLoading();
+		collider = new TileCollider(world);
+	}
+
+	@TearDown
+	public void tearDown() {
+		world.dispose();
+	}
+
+	/**
+	 * A box walking and falling onto the surface, one tick
+	 */
+	@Benchmark
+	public int fallOntoSurface() {
+		column = (column + 1) & 127;
+		position.set(column + 64, generator.getSurfaceHeight(column + 64) + 0.5f);
+		velocity.set(10, -20);
+		return collider.move(position, velocity, WIDTH, HEIGHT, 1 / 60f);
+	}
+
+	/**
+	 * A box that moves a long way in one tick, so many columns and rows are swept
+	 */
+	@Benchmark
+	public int longSweep() {
+		column = (column + 1) & 127;
+		position.set(column + 64, generator.getSurfaceHeight(column + 64) + 20);
+		velocity.set(300, -1200);
+		return collider.move(position, velocity, WIDTH, HEIGHT, 1 / 60f);
+	}
+
+	@Benchmark
+	public boolean overlaps() {
+		column = (column + 1) & 127;
+		return collider.overlaps(column + 64, 0, WIDTH, HEIGHT);
+	}
+}
@@ -0,0 +1,80 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import entities.Entity;
+import entities.EntityContainer;
+
+/**
+ * EntityContainer.update and the region queries, with Movers spread over a 256 x 256 area
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityContainerBenchmark {
+	@Param({ "100", "1000", "10000" })
+	public int entities;
+
+	private EntityContainer container;
+	private List<Entity> buffer;
+	private float queryX;
+
+	@Setup
+	public void setUp() {
+		container = EntityContainer.getInstance();
+		container.clear();
+		Random random = new Random(1);
+		for (int i = 0; i < entities; i++) {
+			Mover mover = new Mover();
+			mover.getPosition().set(random.nextFloat() * Mover.AREA, random.nextFloat() * Mover.AREA);
+			mover.getVelocity().set(random.nextFloat() * 8 - 4, random.nextFloat() * 8 - 4);
+			container.add(mover);
+		}
+		buffer = new ArrayList<Entity>();
+	}
+
+	@TearDown
+	public void tearDown() {
+		container.clear();
+	}
+
+	@Benchmark
+	public int update() {
+		container.update(1 / 60f);
+		return container.size();
+	}
+
+	/**
+	 * A screen sized region, moved a little every call so it doesn't always hit the same cells
+	 */
+	@Benchmark
+	public int getEntitiesIntoBuffer() {
+		queryX = (queryX + 7) % (Mover.AREA - 30);
+		return container.getEntities(queryX, 100, queryX + 30, 120, null, buffer);
+	}
+
+	@Benchmark
+	public List<Entity> getEntitiesAllocating() {
+		queryX = (queryX + 7) % (Mover.AREA - 30);
+		return container.getEntities(queryX, 100, queryX + 30, 120);
+	}
+}
@@ -0,0 +1,84 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.maps.tiled.TiledMap;
+import com.badlogic.gdx.maps.tiled.TiledMapTileLayer;
+
+import dig.Chunk;
+import dig.HeadlessTmxLoader;
+import dig.MapResources;
+import dig.ProceduralChunkGenerator;
+import dig.TiledMapChunkGenerator;
+
+/**
+ * Parsing level1.tmx and turning it into chunks, plus generating terrain chunks for comparison
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapLoadBenchmark {
+	private FileHandle file;
+	private HeadlessTmxLoader loader;
+	private TiledMapChunkGenerator mapGenerator;
+	private ProceduralChunkGenerator terrain;
+	private Chunk chunk;
+	private int mapChunks;
+	private int next;
+
+	@Setup
+	public void setUp() throws IOException {
+		file = new FileHandle(new File("data/level1.tmx"));
+		loader = new HeadlessTmxLoader();
+		TiledMap map = loader.parse(file);
+		mapGenerator = new TiledMapChunkGenerator(map, null);
+		terrain = new ProceduralChunkGenerator(1, 2);
+		chunk = new Chunk(MapResources.LAYERS);
+		int width = ((TiledMapTileLayer) map.getLayers().get(0)).getWidth();
+		mapChunks = (width + Chunk.SIZE - 1) / Chunk.SIZE;
+	}
+
+	@Benchmark
+	public TiledMap parseLevel() throws IOException {
+		return loader.parse(file);
+	}
+
+	/**
+	 * Copies one chunk's worth of level1.tmx into a chunk
+	 */
+	@Benchmark
+	public Chunk mapChunk() {
+		next = (next + 1) % mapChunks;
+		chunk.reset(next, 0);
+		mapGenerator.generate(chunk);
+		return chunk;
+	}
+
+	/**
+	 * Generates one underground chunk of terrain
+	 */
+	@Benchmark
+	public Chunk terrainChunk() {
+		next++;
+		chunk.reset(next, -2);
+		terrain.generate(chunk);
+		return chunk;
+	}
+}
@@ -0,0 +1,32 @@
+package bench;
+
+import entities.Entity;
+
+/**
+ * Entity that drifts back and forth inside a box, stands in for game Entitys without needing textures or input
+ */
+public class Mover extends Entity {
+	static final float AREA = 256; // Side of the box the Movers stay in
+
+	public Mover() {
+		setWidth(1);
+		setHeight(1);
+	}
+
+	@Override
+	protected Entity newInstance() {
+		return new Mover();
+	}
+
+	@Override
+	public void update(float deltaTime) {
+		super.update(deltaTime);
+		getPosition().add(getVelocity().x * deltaTime, getVelocity().y * deltaTime);
+		if (getPosition().x < 0 || getPosition().x > AREA) {
+			getVelocity().x = -getVelocity().x;
+		}
+		if (getPosition().y < 0 || getPosition().y > AREA) {
+			getVelocity().y = -getVelocity().y;
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package dig;
+
+import com.badlogic.gdx.assets.AssetManager;
+import com.badlogic.gdx.assets.loaders.resolvers.InternalFileHandleResolver;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.maps.tiled.TiledMap;
+import com.badlogic.gdx.maps.tiled.TmxMapLoader;
+
+/**
+ * Loads every atlas and map the game uses exactly once. Assets are loaded in the background a slice at a time by
+ * update() so the game keeps drawing frames, and are reference counted: everything that uses an asset acquires it
+ * and releases it when done, and the asset is disposed when the last reference is released.
+ */
+public class Assets {
+	private static Assets instance;
+
+	public static Assets getInstance() {
+		if (instance == null) {
+			instance = new Assets();
+		}
+		return instance;
+	}
+
+	// Every sprite, packed by AtlasPacker from data/heroTextures.txt, data/CircleTextures.txt and
+	// data/ParticleTextures.txt
+	public static final String SPRITE_ATLAS = "data/sprites.txt";
+	public static final String LEVEL_MAP = "data/level1.tmx";
+
+	// How long update() may spend loading per call, keeps frames coming while loading
+	private static final int UPDATE_MILLIS = 10;
+
+	private AssetManager manager;
+
+	private Assets() {
+	}
+
+	/**
+	 * Queues everything the game needs to start, call update() every frame until it returns true.
+	 * The queued assets hold one reference each until dispose()
+	 */
+	public void create() {
+		manager = new AssetManager();
+		manager.setLoader(TiledMap.class, new TmxMapLoader(new InternalFileHandleResolver()));
+		manager.load(SPRITE_ATLAS, TextureAtlas.class);
+		manager.load(LEVEL_MAP, TiledMap.class);
+	}
+
+	/**
+	 * Loads queued assets for a few milliseconds
+	 * @return Whether everything queued has been loaded
+	 */
+	public boolean update() {
+		return manager.update(UPDATE_MILLIS);
+	}
+
+	/**
+	 * Blocks until everything queued has been loaded
+	 */
+	public void finishLoading() {
+		manager.finishLoading();
+	}
+
+	/**
+	 * @return How much of what has been queued is loaded, from 0 to 1
+	 */
+	public float getProgress() {
+		return manager.getProgress();
+	}
+
+	/**
+	 * Gets a loaded asset and adds a reference to it, every acquire needs a matching release
+	 * @param fileName Path of the asset, one of the constants above
+	 * @param type Class of the asset
+	 * @return The shared asset, don't dispose it
+	 */
+	public <T> T acquire(String fileName, Class<T> type) {
+		if (!manager.isLoaded(fileName, type)) {
+			throw new IllegalStateException(fileName + " has not been loaded");
+		}
+		manager.setReferenceCount(fileName, manager.getReferenceCount(fileName) + 1);
+		return manager.get(fileName, type);
+	}
+
+	/**
+	 * @return Whether the asset has been loaded, false before create() and in headless tools
+	 */
+	public boolean isLoaded(String fileName) {
+		return manager != null && manager.isLoaded(fileName);
+	}
+
+	/**
+	 * Removes a reference added by acquire, the asset is disposed once nothing references it
+	 * @param fileName Path the asset was acquired with
+	 */
+	public void release(String fileName) {
+		if (manager.isLoaded(fileName)) {
+			manager.unload(fileName);
+		}
+	}
+
+	/**
+	 * @return Number of references to the asset, 0 if it isn't loaded
+	 */
+	public int getReferenceCount(String fileName) {
+		return manager.isLoaded(fileName) ? manager.getReferenceCount(fileName) : 0;
+	}
+
+	/**
+	 * Disposes every asset, whether or not it was released
+	 */
+	public void dispose() {
+		Assets.instance = null;
+		manager.dispose();
+	}
+}
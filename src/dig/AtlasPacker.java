@@ -0,0 +1,282 @@
+package dig;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Asset pipeline step that packs the regions of several libgdx atlases into as few pages as possible and writes
+ * them out as one atlas, so every sprite can be drawn without switching textures. Each page is the smallest power of
+ * two the regions fit into, up to MAX_SIZE, regions are placed on shelves tallest first with PADDING pixels between
+ * them so linear filtering doesn't bleed neighbours in.
+ * Names ending in a number become that name with the number as index, p1_walk01 is p1_walk index 1, so an
+ * animation's frames are found with one TextureAtlas.findRegions() in order.
+ * Run by gradle packAtlas, and again whenever a source atlas changes:
+ *
+ * <pre>
+ * AtlasPacker output.txt input.txt...
+ * </pre>
+ */
+public class AtlasPacker {
+	private static final Logger log = Logger.get("AtlasPacker");
+
+	private static final int MIN_SIZE = 64;
+	private static final int MAX_SIZE = 1024;
+	private static final int PADDING = 2;
+
+	private final List<Region> regions = new ArrayList<Region>();
+	private String filter = "Linear,Linear";
+
+	private static class Region {
+		String name;
+		int index = -1;
+		BufferedImage image;
+		int width, height;
+		int originalWidth, originalHeight;
+		int offsetX, offsetY;
+		int page, x, y; // Where it was packed
+	}
+
+	// tallest first, then widest, then by name so the same atlases always pack the same way
+	private static final Comparator<Region> packOrder = new Comparator<Region>() {
+		@Override
+		public int compare(Region a, Region b) {
+			if (a.height != b.height) {
+				return b.height - a.height;
+			}
+			if (a.width != b.width) {
+				return b.width - a.width;
+			}
+			int byName = a.name.compareTo(b.name);
+			return byName != 0 ? byName : a.index - b.index;
+		}
+	};
+
+	/**
+	 * Reads every region of an atlas along with its pixels
+	 */
+	public void add(File atlas) throws IOException {
+		BufferedReader in = new BufferedReader(new FileReader(atlas));
+		try {
+			BufferedImage page = null;
+			Region region = null;
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.trim().length() == 0) {
+					// a blank line starts a new page, its settings come before its first region
+					page = null;
+					region = null;
+					continue;
+				}
+				if (page == null) {
+					File file = new File(atlas.getParentFile(), line.trim());
+					page = ImageIO.read(file);
+					if (page == null) {
+						throw new IOException("Could not read " + file);
+					}
+					continue;
+				}
+				int colon = line.indexOf(':');
+				if (!line.startsWith(" ") && colon < 0) {
+					region = new Region();
+					region.name = line;
+					regions.add(region);
+					continue;
+				}
+				if (colon < 0) {
+					throw new IOException(atlas + ": cannot read line " + line);
+				}
+				String key = line.substring(0, colon).trim();
+				String[] values = line.substring(colon + 1).trim().split("\\s*,\\s*");
+				if (region == null) {
+					// page settings, the filter is kept for the packed pages
+					if (key.equals("filter")) {
+						filter = values[0] + "," + values[1];
+					}
+					continue;
+				}
+				if (key.equals("rotate")) {
+					if (!values[0].equals("false")) {
+						throw new IOException(atlas + ": rotated region " + region.name + " is not supported");
+					}
+				} else if (key.equals("xy")) {
+					region.x = Integer.parseInt(values[0]);
+					region.y = Integer.parseInt(values[1]);
+				} else if (key.equals("size")) {
+					region.width = Integer.parseInt(values[0]);
+					region.height = Integer.parseInt(values[1]);
+					region.image = page.getSubimage(region.x, region.y, region.width, region.height);
+				} else if (key.equals("orig")) {
+					region.originalWidth = Integer.parseInt(values[0]);
+					region.originalHeight = Integer.parseInt(values[1]);
+				} else if (key.equals("offset")) {
+					region.offsetX = Integer.parseInt(values[0]);
+					region.offsetY = Integer.parseInt(values[1]);
+				} else if (key.equals("index")) {
+					region.index = Integer.parseInt(values[0]);
+				}
+			}
+		} finally {
+			in.close();
+		}
+		for (Region read : regions) {
+			if (read.image == null) {
+				throw new IOException(atlas + ": region " + read.name + " has no size");
+			}
+			splitIndex(read);
+		}
+	}
+
+	/**
+	 * Turns a number at the end of the name into the index, if the region has none
+	 */
+	private static void splitIndex(Region region) {
+		if (region.index >= 0) {
+			return;
+		}
+		int end = region.name.length();
+		int start = end;
+		while (start > 0 && Character.isDigit(region.name.charAt(start - 1))) {
+			start--;
+		}
+		if (start > 0 && start < end && end - start < 9) {
+			region.index = Integer.parseInt(region.name.substring(start));
+			region.name = region.name.substring(0, start);
+		}
+	}
+
+	/**
+	 * Packs every region added and writes the atlas, its pages are written next to it named after it
+	 * @return Number of pages written
+	 */
+	public int write(File atlas) throws IOException {
+		List<Region> remaining = new ArrayList<Region>(regions);
+		Collections.sort(remaining, packOrder);
+		String baseName = atlas.getName().replaceFirst("\\.[^.]*$", "");
+		List<String> pageNames = new ArrayList<String>();
+		List<Region> packed = new ArrayList<Region>();
+		while (!remaining.isEmpty()) {
+			int page = pageNames.size();
+			int[] size = pageSize(remaining);
+			List<Region> placed = place(remaining, size[0], size[1]);
+			if (placed.isEmpty()) {
+				throw new IOException("Region " + remaining.get(0).name + " is bigger than " + MAX_SIZE + " pixels");
+			}
+			BufferedImage image = new BufferedImage(size[0], size[1], BufferedImage.TYPE_INT_ARGB);
+			Graphics2D graphics = image.createGraphics();
+			for (Region region : placed) {
+				region.page = page;
+				graphics.drawImage(region.image, region.x, region.y, null);
+			}
+			graphics.dispose();
+			String pageName = baseName + (page == 0 ? "" : String.valueOf(page + 1)) + ".png";
+			ImageIO.write(image, "png", new File(atlas.getParentFile(), pageName));
+			pageNames.add(pageName);
+			packed.addAll(placed);
+			remaining.removeAll(placed);
+		}
+
+		Writer out = new BufferedWriter(new FileWriter(atlas));
+		try {
+			for (int page = 0; page < pageNames.size(); page++) {
+				out.write("\n" + pageNames.get(page) + "\n");
+				out.write("format: RGBA8888\nfilter: " + filter + "\nrepeat: none\n");
+				for (Region region : packed) {
+					if (region.page != page) {
+						continue;
+					}
+					out.write(region.name + "\n");
+					out.write("  rotate: false\n");
+					out.write("  xy: " + region.x + ", " + region.y + "\n");
+					out.write("  size: " + region.width + ", " + region.height + "\n");
+					out.write("  orig: " + region.originalWidth + ", " + region.originalHeight + "\n");
+					out.write("  offset: " + region.offsetX + ", " + region.offsetY + "\n");
+					out.write("  index: " + region.index + "\n");
+				}
+			}
+		} finally {
+			out.close();
+		}
+		return pageNames.size();
+	}
+
+	/**
+	 * @return Width and height of the smallest page all regions fit on, MAX_SIZE square if they don't fit on one
+	 */
+	private static int[] pageSize(List<Region> regions) {
+		int[] best = { MAX_SIZE, MAX_SIZE };
+		for (int width = MIN_SIZE; width <= MAX_SIZE; width *= 2) {
+			for (int height = MIN_SIZE; height <= width; height *= 2) {
+				boolean smaller = width * height < best[0] * best[1];
+				if (smaller && place(regions, width, height).size() == regions.size()) {
+					best[0] = width;
+					best[1] = height;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Places regions on shelves from the top left, skipping the ones that no longer fit
+	 * @param regions Regions sorted tallest first
+	 * @return The regions that were placed, with their x and y set
+	 */
+	private static List<Region> place(List<Region> regions, int width, int height) {
+		List<Region> placed = new ArrayList<Region>();
+		int shelfY = 0, shelfHeight = 0, x = 0;
+		for (Region region : regions) {
+			if (region.width > width) {
+				continue;
+			}
+			if (x + region.width > width) {
+				// next shelf
+				shelfY += shelfHeight + PADDING;
+				shelfHeight = 0;
+				x = 0;
+			}
+			if (shelfY + region.height > height) {
+				continue;
+			}
+			region.x = x;
+			region.y = shelfY;
+			x += region.width + PADDING;
+			shelfHeight = Math.max(shelfHeight, region.height);
+			placed.add(region);
+		}
+		return placed;
+	}
+
+	/**
+	 * Packs the atlases given after the output atlas into it
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.out.println("Arguments: output.txt input.txt...");
+			System.exit(1);
+		}
+		AtlasPacker packer = new AtlasPacker();
+		try {
+			for (int i = 1; i < args.length; i++) {
+				packer.add(new File(args[i]));
+			}
+			int pages = packer.write(new File(args[0]));
+			log.info("Packed " + packer.regions.size() + " regions into " + pages + " page(s) in " + args[0]);
+		} catch (IOException e) {
+			log.error("Could not pack " + args[0], e);
+			System.exit(1);
+		}
+	}
+}
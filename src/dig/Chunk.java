@@ -0,0 +1,264 @@
+package dig;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A fixed-size square piece of the world. Holds one cell per tile for every map layer, a short packing the tile id
+ * (0 meaning an empty cell) with its flags, see Tiles. At 2 bytes per tile a chunk's layer is a 2 KB array, and
+ * whether a tile is solid is a read and a mask.
+ * Chunks are paged in and out around the camera by MapResources, so the world is never held in memory as a whole.
+ */
+public class Chunk {
+	public static final int SHIFT = 5;
+	public static final int SIZE = 1 << SHIFT; // 32x32 tiles
+	public static final int MASK = SIZE - 1;
+
+	private static final int FILE_MAGIC = 0x44494743; // "DIGC"
+	private static final int FILE_VERSION = 2; // 1 stored tile ids, 2 stores cells
+
+	private final short[][] cells; // [layer][localY * SIZE + localX]
+	private int chunkX, chunkY;
+	private boolean modified; // Changed since it was loaded/generated, needs to be saved
+	private int revision; // Goes up on every change, lets caches tell whether they're stale
+
+	// Local tiles changed since the last clearDirty(), empty when dirtyMinX > dirtyMaxX
+	private int dirtyMinX, dirtyMinY, dirtyMaxX, dirtyMaxY;
+	boolean queuedDirty; // In MapResources' list of dirty chunks
+
+	public Chunk(int layers) {
+		cells = new short[layers][SIZE * SIZE];
+		clearDirty();
+	}
+
+	/**
+	 * Packs chunk coordinates into a single key for lookups
+	 */
+	public static long key(int chunkX, int chunkY) {
+		return ((long) chunkX << 32) | (chunkY & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Converts a tile coordinate to the coordinate of the chunk that contains it, works for negative coordinates too
+	 */
+	public static int toChunk(int tile) {
+		return tile >> SHIFT;
+	}
+
+	/**
+	 * Clears all tiles and moves the chunk to a new position, used when a chunk is reused from the pool
+	 */
+	public void reset(int chunkX, int chunkY) {
+		this.chunkX = chunkX;
+		this.chunkY = chunkY;
+		this.modified = false;
+		this.revision++;
+		this.queuedDirty = false;
+		clearDirty();
+		for (int layer = 0; layer < cells.length; layer++) {
+			Arrays.fill(cells[layer], (short) 0);
+		}
+	}
+
+	public int getChunkX() {
+		return chunkX;
+	}
+
+	public int getChunkY() {
+		return chunkY;
+	}
+
+	/**
+	 * @return X of the bottom left tile of this chunk in world tiles
+	 */
+	public int getTileX() {
+		return chunkX << SHIFT;
+	}
+
+	/**
+	 * @return Y of the bottom left tile of this chunk in world tiles
+	 */
+	public int getTileY() {
+		return chunkY << SHIFT;
+	}
+
+	public int getLayerCount() {
+		return cells.length;
+	}
+
+	/**
+	 * @return Id of the tile, 0 if the cell is empty
+	 */
+	public int getTile(int layer, int localX, int localY) {
+		return cells[layer][localY * SIZE + localX] & Tiles.ID_MASK;
+	}
+
+	/**
+	 * @return The cell with its flags, see Tiles
+	 */
+	public int getCell(int layer, int localX, int localY) {
+		return cells[layer][localY * SIZE + localX];
+	}
+
+	/**
+	 * @return The cells of a layer, indexed by localY * SIZE + localX, for reading a whole chunk in a tight loop.
+	 * Do not modify
+	 */
+	public short[] getCells(int layer) {
+		return cells[layer];
+	}
+
+	/**
+	 * @return Whether the tile on the wall layer is solid
+	 */
+	public boolean isSolid(int localX, int localY) {
+		return (cells[MapResources.WALL_LAYER][localY * SIZE + localX] & Tiles.SOLID) != 0;
+	}
+
+	/**
+	 * Sets the tile to a fresh tile of id, with the flags Tiles defines for it
+	 * @return Whether the tile changed
+	 */
+	public boolean setTile(int layer, int localX, int localY, int id) {
+		return setCell(layer, localX, localY, Tiles.cell(id));
+	}
+
+	/**
+	 * Sets the cell, flags and all. Only a change of tile id or solidity counts as a visible change that bumps the
+	 * revision and the dirty rectangle, a hit that only takes off hardness just needs saving
+	 * @return Whether the tile's id or solidity changed
+	 */
+	public boolean setCell(int layer, int localX, int localY, int cell) {
+		int index = localY * SIZE + localX;
+		int old = cells[layer][index];
+		if (old == (short) cell) {
+			return false;
+		}
+		cells[layer][index] = (short) cell;
+		modified = true;
+		if (((old ^ cell) & (Tiles.ID_MASK | Tiles.SOLID)) == 0) {
+			return false;
+		}
+		revision++;
+		dirtyMinX = Math.min(dirtyMinX, localX);
+		dirtyMinY = Math.min(dirtyMinY, localY);
+		dirtyMaxX = Math.max(dirtyMaxX, localX);
+		dirtyMaxY = Math.max(dirtyMaxY, localY);
+		return true;
+	}
+
+	public int getRevision() {
+		return revision;
+	}
+
+	public boolean isDirty() {
+		return dirtyMinX <= dirtyMaxX;
+	}
+
+	public int getDirtyMinX() {
+		return dirtyMinX;
+	}
+
+	public int getDirtyMinY() {
+		return dirtyMinY;
+	}
+
+	public int getDirtyMaxX() {
+		return dirtyMaxX;
+	}
+
+	public int getDirtyMaxY() {
+		return dirtyMaxY;
+	}
+
+	public void clearDirty() {
+		dirtyMinX = dirtyMinY = SIZE;
+		dirtyMaxX = dirtyMaxY = -1;
+	}
+
+	public boolean isModified() {
+		return modified;
+	}
+
+	public void setModified(boolean modified) {
+		this.modified = modified;
+	}
+
+	/**
+	 * Writes the cells run-length encoded, each run is a (length, cell) pair stored as varints.
+	 * Dug out caves and solid rock are long runs, so most chunks end up a few hundred bytes.
+	 */
+	public void write(DataOutputStream out) throws IOException {
+		out.writeInt(FILE_MAGIC);
+		out.writeByte(FILE_VERSION);
+		out.writeByte(cells.length);
+		for (int layer = 0; layer < cells.length; layer++) {
+			short[] layerCells = cells[layer];
+			int i = 0;
+			while (i < layerCells.length) {
+				short cell = layerCells[i];
+				int run = 1;
+				while (i + run < layerCells.length && layerCells[i + run] == cell) {
+					run++;
+				}
+				writeVarInt(out, run);
+				writeVarInt(out, cell & 0xFFFF);
+				i += run;
+			}
+		}
+	}
+
+	/**
+	 * Reads cells written by write(), the chunk position is left as is. Chunks saved before cells had flags get the
+	 * flags Tiles defines for their ids
+	 */
+	public void read(DataInputStream in) throws IOException {
+		if (in.readInt() != FILE_MAGIC) {
+			throw new IOException("Not a chunk file");
+		}
+		int version = in.readUnsignedByte();
+		if (version != 1 && version != FILE_VERSION) {
+			throw new IOException("Unsupported chunk version: " + version);
+		}
+		int layers = Math.min(in.readUnsignedByte(), cells.length);
+		for (int layer = 0; layer < layers; layer++) {
+			short[] layerCells = cells[layer];
+			int i = 0;
+			while (i < layerCells.length) {
+				int run = readVarInt(in);
+				int value = readVarInt(in);
+				if (run <= 0 || i + run > layerCells.length) {
+					throw new IOException("Corrupt chunk run at " + i);
+				}
+				short cell = (short) (version == 1 ? Tiles.cell(value) : value);
+				Arrays.fill(layerCells, i, i + run, cell);
+				i += run;
+			}
+		}
+		modified = false;
+		revision++;
+		clearDirty();
+	}
+
+	private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private static int readVarInt(DataInputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+}
@@ -0,0 +1,12 @@
+package dig;
+
+/**
+ * Fills in chunks that have never been saved to disk.
+ */
+public interface ChunkGenerator {
+	/**
+	 * Fills the freshly reset chunk with tiles, the chunk's position is already set
+	 * @param chunk Chunk to fill
+	 */
+	public void generate(Chunk chunk);
+}
@@ -0,0 +1,331 @@
+package dig;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL10;
+import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Pixmap.Blending;
+import com.badlogic.gdx.graphics.Pixmap.Format;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.Texture.TextureFilter;
+import com.badlogic.gdx.graphics.g2d.SpriteCache;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.maps.MapLayers;
+import com.badlogic.gdx.maps.tiled.TiledMapTile;
+import com.badlogic.gdx.maps.tiled.TiledMapTileSet;
+import com.badlogic.gdx.maps.tiled.TiledMapTileSets;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.Pool;
+
+/**
+ * Draws the tiles of the loaded chunks that are inside the camera's view, 1 world unit is 1 tile.
+ * The tiles of every chunk layer are baked once into a SpriteCache and drawn from there each frame, a chunk is only
+ * baked again when its revision changes, i.e. when its tiles were edited or it was loaded again.
+ */
+public class ChunkRenderer implements MapListener {
+	// Sprites the cache has room for at first, it grows when the loaded chunks need more
+	private static final int INITIAL_CAPACITY = 8192;
+	private static final int WATER_PIXELS = 16; // Width and height of a water tile's texture
+
+	private final MapResources world;
+	private TextureRegion[] regions; // Tile id, region
+	private Texture water; // Every water level, they aren't in the tile set
+	private float[] opacity; // Layer, opacity
+
+	private SpriteCache cache;
+	private int capacity; // Sprites the cache has room for
+	private int used; // Sprites taken by the caches made since the cache was last cleared
+	private int lastCacheId = -1; // Cache made last, the only one that can be redefined bigger than it was made
+	private final LongMap<ChunkMesh> meshes; // Chunk key, baked tiles of the chunk
+	private final Pool<ChunkMesh> meshPool;
+	private final Array<ChunkMesh> meshList; // Same meshes as above, for clearing without an iterator
+	private int rebuilds; // Chunk layers baked during the last render
+	private int draws; // Caches drawn during the last render, each one is a draw call
+
+	/**
+	 * The caches holding one chunk's tiles, one per layer
+	 */
+	private static class ChunkMesh {
+		final int[] cacheIds = new int[MapResources.LAYERS]; // Layer, cache id or -1 if never baked
+		final int[] counts = new int[MapResources.LAYERS]; // Layer, sprites in the cache
+		final int[] maxCounts = new int[MapResources.LAYERS]; // Layer, sprites the cache can be redefined with
+		int revision; // Chunk revision the caches were baked from
+		boolean built;
+
+		void reset() {
+			for (int layer = 0; layer < cacheIds.length; layer++) {
+				cacheIds[layer] = -1;
+				counts[layer] = 0;
+				maxCounts[layer] = 0;
+			}
+			built = false;
+		}
+	}
+
+	public ChunkRenderer(MapResources world) {
+		this.world = world;
+
+		// resolve every tile id to its region once so baking is an array lookup
+		TiledMapTileSets tileSets = world.getTileSets();
+		int maxId = 0;
+		for (TiledMapTileSet tileSet : tileSets) {
+			for (TiledMapTile tile : tileSet) {
+				maxId = Math.max(maxId, tile.getId());
+			}
+		}
+		int lastWater = ProceduralChunkGenerator.WATER_TILE + ProceduralChunkGenerator.WATER_LEVELS - 1;
+		regions = new TextureRegion[Math.max(maxId, lastWater) + 1];
+		for (TiledMapTileSet tileSet : tileSets) {
+			for (TiledMapTile tile : tileSet) {
+				regions[tile.getId()] = tile.getTextureRegion();
+			}
+		}
+		createWater();
+
+		MapLayers layers = world.getMap().getLayers();
+		opacity = new float[MapResources.LAYERS];
+		for (int layer = 0; layer < opacity.length; layer++) {
+			opacity[layer] = layer < layers.getCount() ? layers.get(layer).getOpacity() : 1;
+		}
+
+		capacity = INITIAL_CAPACITY;
+		cache = new SpriteCache(capacity, false);
+		meshes = new LongMap<ChunkMesh>();
+		meshList = new Array<ChunkMesh>(false, 16);
+		meshPool = new Pool<ChunkMesh>() {
+			@Override
+			protected ChunkMesh newObject() {
+				return new ChunkMesh();
+			}
+		};
+		world.addListener(this);
+	}
+
+	/**
+	 * Draws every water level into one texture, from top to bottom, each a strip of blue as high as the water
+	 */
+	private void createWater() {
+		int levels = ProceduralChunkGenerator.WATER_LEVELS;
+		Pixmap pixmap = new Pixmap(WATER_PIXELS, WATER_PIXELS * levels, Format.RGBA8888);
+		Blending blending = Pixmap.getBlending();
+		Pixmap.setBlending(Blending.None);
+		pixmap.setColor(0.2f, 0.45f, 0.9f, 0.6f);
+		for (int level = 1; level <= levels; level++) {
+			int height = WATER_PIXELS * level / levels;
+			// pixmaps start at the top, the water sits at the bottom of its tile
+			pixmap.fillRectangle(0, WATER_PIXELS * level - height, WATER_PIXELS, height);
+		}
+		Pixmap.setBlending(blending);
+		water = new Texture(pixmap);
+		water.setFilter(TextureFilter.Nearest, TextureFilter.Nearest);
+		pixmap.dispose();
+		for (int level = 1; level <= levels; level++) {
+			regions[ProceduralChunkGenerator.WATER_TILE + level - 1] = new TextureRegion(water, 0,
+					WATER_PIXELS * (level - 1), WATER_PIXELS, WATER_PIXELS);
+		}
+	}
+
+	/**
+	 * Draws all visible tiles, baking the chunks that changed since they were last drawn
+	 */
+	public void render(OrthographicCamera camera) {
+		float halfWidth = camera.viewportWidth * camera.zoom / 2;
+		float halfHeight = camera.viewportHeight * camera.zoom / 2;
+		int minChunkX = Chunk.toChunk((int) Math.floor(camera.position.x - halfWidth));
+		int maxChunkX = Chunk.toChunk((int) Math.floor(camera.position.x + halfWidth));
+		int minChunkY = Chunk.toChunk((int) Math.floor(camera.position.y - halfHeight));
+		int maxChunkY = Chunk.toChunk((int) Math.floor(camera.position.y + halfHeight));
+
+		rebuilds = 0;
+		boolean cleared = false;
+		while (!bakeVisible(minChunkX, minChunkY, maxChunkX, maxChunkY)) {
+			// the cache ran out of room, old caches of edited and unloaded chunks are still taking space. Start over,
+			// and grow the cache if even the visible chunks alone didn't fit
+			clearCache(cleared);
+			cleared = true;
+		}
+
+		// whole chunks are drawn, the GPU clips the tiles that are off screen
+		cache.setProjectionMatrix(camera.combined);
+		Gdx.gl.glEnable(GL10.GL_BLEND);
+		Gdx.gl.glBlendFunc(GL10.GL_SRC_ALPHA, GL10.GL_ONE_MINUS_SRC_ALPHA);
+		draws = 0;
+		cache.begin();
+		for (int layer = 0; layer < MapResources.LAYERS; layer++) {
+			for (int chunkY = minChunkY; chunkY <= maxChunkY; chunkY++) {
+				for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+					ChunkMesh mesh = meshes.get(Chunk.key(chunkX, chunkY));
+					if (mesh != null && mesh.counts[layer] > 0) {
+						cache.draw(mesh.cacheIds[layer]);
+						draws++;
+					}
+				}
+			}
+		}
+		cache.end();
+		Gdx.gl.glDisable(GL10.GL_BLEND);
+	}
+
+	/**
+	 * Bakes every visible chunk that isn't up to date
+	 * @return False if the cache ran out of room
+	 */
+	private boolean bakeVisible(int minChunkX, int minChunkY, int maxChunkX, int maxChunkY) {
+		for (int chunkY = minChunkY; chunkY <= maxChunkY; chunkY++) {
+			for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+				Chunk chunk = world.getChunk(chunkX, chunkY);
+				if (chunk == null) {
+					continue;
+				}
+				long key = Chunk.key(chunkX, chunkY);
+				ChunkMesh mesh = meshes.get(key);
+				if (mesh == null) {
+					mesh = meshPool.obtain();
+					mesh.reset();
+					meshes.put(key, mesh);
+					meshList.add(mesh);
+				}
+				if ((!mesh.built || mesh.revision != chunk.getRevision()) && !bake(chunk, mesh)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Bakes the tiles of every layer of a chunk, reusing the chunk's caches when the tiles still fit
+	 * @return False if the cache ran out of room
+	 */
+	private boolean bake(Chunk chunk, ChunkMesh mesh) {
+		for (int layer = 0; layer < MapResources.LAYERS; layer++) {
+			int count = countTiles(chunk, layer);
+			int id = mesh.cacheIds[layer];
+			if (id >= 0 && id == lastCacheId && used - mesh.maxCounts[layer] + count <= capacity) {
+				// redefining the last cache makes it exactly as big as its new tiles
+				cache.beginCache(id);
+				used += count - mesh.maxCounts[layer];
+				mesh.maxCounts[layer] = count;
+			} else if (id >= 0 && count <= mesh.maxCounts[layer]) {
+				// digging takes tiles away and falling ones only move, so edits usually redefine the cache in place
+				cache.beginCache(id);
+			} else if (count == 0) {
+				mesh.counts[layer] = 0;
+				continue;
+			} else {
+				if (used + count > capacity) {
+					return false;
+				}
+				cache.beginCache();
+				used += count;
+				mesh.maxCounts[layer] = count;
+				id = -1;
+			}
+			cache.setColor(1, 1, 1, opacity[layer]);
+			addTiles(chunk, layer);
+			mesh.cacheIds[layer] = cache.endCache();
+			if (id < 0) {
+				lastCacheId = mesh.cacheIds[layer];
+			}
+			mesh.counts[layer] = count;
+			rebuilds++;
+		}
+		mesh.revision = chunk.getRevision();
+		mesh.built = true;
+		return true;
+	}
+
+	private int countTiles(Chunk chunk, int layer) {
+		short[] cells = chunk.getCells(layer);
+		int count = 0;
+		for (int i = 0; i < cells.length; i++) {
+			if (getRegion(Tiles.id(cells[i])) != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private void addTiles(Chunk chunk, int layer) {
+		short[] cells = chunk.getCells(layer);
+		int tileX = chunk.getTileX();
+		int tileY = chunk.getTileY();
+		for (int y = 0; y < Chunk.SIZE; y++) {
+			for (int x = 0; x < Chunk.SIZE; x++) {
+				TextureRegion region = getRegion(Tiles.id(cells[y * Chunk.SIZE + x]));
+				if (region != null) {
+					cache.add(region, tileX + x, tileY + y, 1, 1);
+				}
+			}
+		}
+	}
+
+	private TextureRegion getRegion(int id) {
+		return id > 0 && id < regions.length ? regions[id] : null;
+	}
+
+	/**
+	 * Throws away every baked chunk so they are baked again when next drawn
+	 * @param grow Whether to double the size of the cache
+	 */
+	private void clearCache(boolean grow) {
+		if (grow) {
+			cache.dispose();
+			capacity *= 2;
+			cache = new SpriteCache(capacity, false);
+		} else {
+			cache.clear();
+		}
+		used = 0;
+		lastCacheId = -1;
+		for (int i = 0; i < meshList.size; i++) {
+			meshList.get(i).reset();
+		}
+	}
+
+	@Override
+	public void chunkLoaded(Chunk chunk) {
+		// baked lazily the first time it is on screen
+	}
+
+	@Override
+	public void chunkUnloaded(Chunk chunk) {
+		ChunkMesh mesh = meshes.remove(Chunk.key(chunk.getChunkX(), chunk.getChunkY()));
+		if (mesh != null) {
+			// its caches stay in the SpriteCache until the next clear, there is no freeing a single cache
+			meshList.removeValue(mesh, true);
+			meshPool.free(mesh);
+		}
+	}
+
+	@Override
+	public void tilesChanged(Chunk chunk, int x1, int y1, int x2, int y2) {
+		// the chunk's revision changed, it is baked again the next time it is drawn
+	}
+
+	@Override
+	public void tileDug(int x, int y, int id) {
+		// the chunk is baked again once the edit is flushed
+	}
+
+	/**
+	 * @return Number of chunk layers baked during the last render, 0 on frames where nothing was edited or loaded
+	 */
+	public int getRebuildCount() {
+		return rebuilds;
+	}
+
+	/**
+	 * @return Number of caches drawn during the last render, at least one draw call each
+	 */
+	public int getDrawCount() {
+		return draws;
+	}
+
+	public void dispose() {
+		world.removeListener(this);
+		cache.dispose();
+		water.dispose();
+	}
+}
@@ -2,29 +2,22 @@
 package dig;
 
 import java.io.File;
+import java.io.IOException;
 
 import com.badlogic.gdx.ApplicationListener;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Input.Keys;
-import com.badlogic.gdx.files.FileHandle;
-import com.badlogic.gdx.graphics.FPSLogger;
 import com.badlogic.gdx.graphics.GL10;
 import com.badlogic.gdx.graphics.OrthographicCamera;
-import com.badlogic.gdx.graphics.g2d.Animation;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
-import com.badlogic.gdx.graphics.g2d.TextureAtlas;
-import com.badlogic.gdx.graphics.g2d.TextureAtlas.AtlasRegion;
-import com.badlogic.gdx.graphics.g2d.TextureRegion;
-import com.badlogic.gdx.maps.tiled.TiledMap;
-import com.badlogic.gdx.maps.tiled.TiledMapTileLayer;
-import com.badlogic.gdx.maps.tiled.TiledMapTileLayer.Cell;
-import com.badlogic.gdx.maps.tiled.TmxMapLoader;
-import com.badlogic.gdx.maps.tiled.renderers.OrthogonalTiledMapRenderer;
-import com.badlogic.gdx.math.Rectangle;
-import com.badlogic.gdx.math.Vector2;
-import com.badlogic.gdx.utils.Array;
-import com.badlogic.gdx.utils.Logger;
-import com.badlogic.gdx.utils.Pool;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer.ShapeType;
+
+import entities.EntityContainer;
+import entities.EntityFactory;
+import entities.Hero;
+import entities.InputSource;
+import entities.ParticleSystem;
  
 /**
  * The game's main class, called as application events are fired.
@@ -35,134 +28,139 @@ public class DigGame
 {
 
 	
-	public static class Hero {
-		static float WIDTH;
-		static float HEIGHT;
-		static float MAX_VELOCITY = 10f;
-		static float JUMP_VELOCITY = 25f;
-		static float DAMPING = 0.975f;
-		static float ACCEL = 15f;
- 
-		enum State
-		{
-			Standing, Walking, Jumping
-		}
- 
-		final Vector2 position = new Vector2();
-		final Vector2 velocity = new Vector2();
-		State state = State.Walking;
-		float stateTime = 0;
-		boolean facesRight = true;
-		boolean grounded = false;
-	}
-	
-	public static class Explosion {
-		static float WIDTH;
-		static float HEIGHT;
-		
-		enum State {
-			Exploding
-		}
-		
-		final Vector2 position = new Vector2();
-		State state = State.Exploding;
-		float stateTime = 0;
-	}
-	
     // constant useful for logging
     public static final String LOG = DigGame.class.getSimpleName();
- 
-    // a libgdx helper class that logs the current FPS each second
-    private FPSLogger fpsLogger;
-    private TiledMap map;
-	private OrthogonalTiledMapRenderer renderer;
+    private static final Logger log = Logger.get(LOG);
+    // where the hero starts, on the ground of level1.tmx
+    public static final float SPAWN_X = 20, SPAWN_Y = 20;
+    private static final int LANTERN_LIGHT = 10; // Light level of the hero's lantern
+    // changes the keys from the defaults in KeyBindings.createDefault(), if it exists
+    public static final String KEY_BINDINGS = "keys.properties";
+ 
+    // times every frame, F3 shows it on screen and F4 writes it to a CSV file
+    private Profiler profiler;
+    private ProfilerOverlay profilerOverlay;
+    private boolean overlayKeyDown, exportKeyDown;
+    private MapResources world;
+	private ChunkRenderer chunkRenderer;
+	private LightMap lightMap;
+	private LightRenderer lightRenderer;
+	private TerrainPhysics terrain;
+	private int lanternX, lanternY; // Tile the hero's light is on
+	private SpriteBatch batch;
 	private OrthographicCamera camera;
-	private Animation stand;
-	private Animation walk;
-	private Animation jump;
-	private Animation circles;
 	private Hero hero;
-	private Explosion explosion;
-	private Pool<Rectangle> rectPool = new Pool<Rectangle>()
-	{
-		@Override
-		protected Rectangle newObject()
-		{
-			return new Rectangle();
-		}
-	};
-	private Array<Rectangle> tiles = new Array<Rectangle>();
-	
-	private float scale = 1 / 16f;
- 
-	// arbitrary value, negative is down, positive is up
-	// -1 feels like a "natural" amount
-	private static final float GRAVITY = -1f;
+	private InputSource input;
+	private File recordingFile; // Where the session's input is written, null when not recording
+	private RecordingInput recorder;
+
+	// the simulation is stepped in fixed ticks so it runs the same at any frame rate,
+	// rendering interpolates between the last two ticks
+	public static final int DEFAULT_TICK_RATE = 60;
+	// most ticks run in one frame, after a long stall the remaining time is dropped
+	// instead of trying to catch up (which would make the next frame even slower)
+	private static final int MAX_TICKS_PER_FRAME = 5;
+	private float tickTime = 1f / DEFAULT_TICK_RATE;
+	private float accumulator;
+
+	// assets load in the background, the game starts once they are all in
+	private boolean loading;
+	private ShapeRenderer progressBar;
  
 
-	TextureAtlas atlas;
-			
     @Override
     public void create()
     {
-        Gdx.app.log( DigGame.LOG, "Creating game" );
-        fpsLogger = new FPSLogger();
-        
-		// load all the different textures into memory
-		atlas = new TextureAtlas(new FileHandle(new File("data/heroTextures.txt")));
-		
-		TextureRegion standText = atlas.findRegion("p1_stand");
-		stand = new Animation(0, standText);
-		jump = new Animation(0, atlas.findRegion("p1_jump"));
-		Array<TextureRegion> walking = new Array<TextureRegion>(11);
-		
-		for (int i = 1; i <= 11; i++) {
-			// i < 10 ? "0" + i : i
-			// puts a 0 in front of the number if it is less than 10 to get 01, 02, 03... 09, 10, 11
-			String regionName = "p1_walk" + (i < 10 ? "0" + i : i);
-			TextureRegion tempRegion = atlas.findRegion(regionName);
-			if (tempRegion == null) {
-				Gdx.app.log(DigGame.LOG, "Null region: " + regionName);
-			}
-			walking.add(tempRegion);
-		}
-		
-		walk = new Animation(0.10f, walking);
-		walk.setPlayMode(Animation.LOOP);
+        log.info( "Creating game" );
+        profiler = Profiler.getInstance();
+
+        // queue up every texture and map, render() shows progress until they're loaded
+        Assets.getInstance().create();
+        progressBar = new ShapeRenderer();
+        loading = true;
+    }
+
+    /**
+     * Sets up the world once all assets are loaded
+     */
+    private void start()
+    {
+		// set up the prototypes of everything that can be spawned
+		EntityFactory factory = EntityFactory.getInstance();
  
-		// figure out the width and height of the koala for collision
-		// detection and rendering by converting a koala frames pixel
-		// size into world units (1 unit == 16 pixels)
-		Hero.WIDTH = scale * standText.getRegionWidth() / 2;
-		Hero.HEIGHT = scale * standText.getRegionHeight() / 2;
-		
-		//load circle animation
-		//get textures from file
-		atlas = new TextureAtlas(new FileHandle(new File("data/CircleTextures.txt")));
-		for (AtlasRegion t : atlas.getRegions()) {
-			Gdx.app.log(DigGame.LOG, "Atlas region with name: " + t.name + " loaded.");
+		// load the world, 1 unit is 16 pixels so that one unit is one tile
+		world = MapResources.getInstance();
+		if (recordingFile != null)
+		{
+			// a replay can only rebuild the world from its seed, so a recorded session starts from a fresh, unsaved one
+			world.create(MapResources.DEFAULT_SEED, null);
 		}
-		//make into animation
-		//LOOP_RANDOM doesn't seem to work as I expected it to...
-		circles = new Animation (0.2f, atlas.getRegions(), Animation.LOOP);
- 
-		// load the map, set the unit scale to 1/16 (1 unit == 16 pixels)
-		// 1 unit is 16 pixels so that one unit is one tile
-		map = new TmxMapLoader().load("data/level1.tmx");
-		renderer = new OrthogonalTiledMapRenderer(map, scale);
+		else
+		{
+			world.create();
+		}
+		chunkRenderer = new ChunkRenderer(world);
+		lightMap = new LightMap(world, MapResources.SKY_HEIGHT);
+		lightRenderer = new LightRenderer(world, lightMap);
+		terrain = new TerrainPhysics(world);
+		batch = new SpriteBatch();
+		profilerOverlay = new ProfilerOverlay(profiler);
  
 		// create an orthographic camera, shows us 30x20 units of the world
 		camera = new OrthographicCamera();
 		camera.setToOrtho(false, 30, 20);
 		camera.update();
+		world.update(camera);
+		// still behind the loading screen, so wait for the first chunks rather than drop the hero into nothing
+		world.finishLoading();
+		// debris and other simple bodies land on the tiles
+		EntityContainer.getInstance().getBodies().setWorld(world);
+		// entity updates spread over the cores once there are enough entities
+		EntityContainer.getInstance().setThreads(Runtime.getRuntime().availableProcessors());
  
 		// create the Koala we want to move around the world
-		hero = new Hero();
-		hero.position.set(20, 20);
-		
-		//create explosion
-		explosion = new Explosion();
-		explosion.position.set(5, 5);
+		hero = (Hero) factory.spawn("hero", SPAWN_X, SPAWN_Y);
+		input = new KeyboardInput(loadKeyBindings());
+		// the hero carries a light so caves aren't pitch black
+		lanternX = (int) Math.floor(SPAWN_X);
+		lanternY = (int) Math.floor(SPAWN_Y);
+		lightMap.addLight(lanternX, lanternY, LANTERN_LIGHT);
+		if (recordingFile != null)
+		{
+			recorder = new RecordingInput(input, new InputRecording(world.getSeed(), getTickRate(), SPAWN_X, SPAWN_Y));
+			input = recorder;
+		}
+
+		// dug out tiles break into chips of their color
+		ParticleSystem particles = EntityContainer.getInstance().getParticles();
+		particles.setTileColor(ProceduralChunkGenerator.SURFACE_TILE, 0x2e9e48);
+		particles.setTileColor(ProceduralChunkGenerator.DIRT_TILE, 0x1d7a36);
+		particles.setTileColor(ProceduralChunkGenerator.STONE_TILE, 0xb8b8b8);
+		particles.setTileColor(ProceduralChunkGenerator.ORE_TILE, 0x59c24a);
+		particles.setTileColor(ProceduralChunkGenerator.SAND_TILE, 0xd8c3a0);
+		particles.setTileColor(ProceduralChunkGenerator.GRAVEL_TILE, 0x8c8c8c);
+		world.addListener(particles);
+    }
+ 
+    /**
+     * @return The bindings in KEY_BINDINGS if there is such a file, the defaults otherwise
+     */
+    private KeyBindings loadKeyBindings()
+    {
+		KeyBindings bindings = KeyBindings.createDefault();
+		File file = new File(KEY_BINDINGS);
+		if (file.exists())
+		{
+			try
+			{
+				bindings.load(file);
+			}
+			catch (IOException e)
+			{
+				log.error("Could not read key bindings from " + file, e);
+			}
+		}
+		return bindings;
     }
  
     @Override
@@ -170,7 +168,7 @@ public class DigGame
         int width,
         int height )
     {
-        Gdx.app.log( DigGame.LOG, "Resizing game to: " + width + " x " + height );
+        log.info( "Resizing game to: " + width + " x " + height );
     }
  
     @Override
@@ -179,270 +177,237 @@ public class DigGame
 		// clear the screen
 		Gdx.gl.glClearColor(0.7f, 0.7f, 1.0f, 1);
 		Gdx.gl.glClear(GL10.GL_COLOR_BUFFER_BIT);
- 
-		// get the delta time
-		float deltaTime = Gdx.graphics.getDeltaTime();
- 
-		// update the koala (process input, collision detection, position update)
-		updateHero(deltaTime);
- 
-		// let the camera follow the koala, x-axis only
-		camera.position.x = hero.position.x;
-		camera.update();
- 
-		// set the tile map renderer view based on what the
-		// camera sees and render the map
-		renderer.setView(camera);
-		renderer.render();
- 
-		// render the koala
-		renderHero(deltaTime);
-		
-		// render explosion
-		renderExplosion(deltaTime);
-		
-        // output the current FPS
-        fpsLogger.log();
-    }
-    
-    //private Vector2 tmp = new Vector2();
 
-    private void updateHero(float deltaTime)
-	{
-		if (deltaTime == 0)
-			return;
-		hero.stateTime += deltaTime;
- 
-		// check input and apply to velocity & state
-		if ((Gdx.input.isKeyPressed(Keys.SPACE) || Gdx.input.isKeyPressed(Keys.UP) || Gdx.input.isKeyPressed(Keys.Q) || isTouched(0.75f, 1)) && hero.grounded)
-		{
-			hero.velocity.y += Hero.JUMP_VELOCITY;
-			hero.state = Hero.State.Jumping;
-			hero.grounded = false;
-		}
- 
-		if (Gdx.input.isKeyPressed(Keys.LEFT) || Gdx.input.isKeyPressed(Keys.A) || isTouched(0, 0.25f))
+		if (loading)
 		{
-			//hero.velocity.x = -Hero.MAX_VELOCITY;
-			hero.velocity.x -= Hero.ACCEL * deltaTime;
-			if (hero.grounded)
-				hero.state = Hero.State.Walking;
-			hero.facesRight = false;
-		}
- 
-		if (Gdx.input.isKeyPressed(Keys.RIGHT) || Gdx.input.isKeyPressed(Keys.D) || isTouched(0.25f, 0.5f))
-		{
-			//hero.velocity.x = Hero.MAX_VELOCITY;
-			hero.velocity.x += Hero.ACCEL * deltaTime;
-			if (hero.grounded)
-				hero.state = Hero.State.Walking;
-			hero.facesRight = true;
-		}
- 
-		Gdx.app.log(DigGame.LOG, "hero.velocity.x = " + hero.velocity.x);
-		
-		// apply gravity if we are falling
-		hero.velocity.add(0, GRAVITY);
- 
-		// clamp the velocity to the maximum, x-axis only
-		if (Math.abs(hero.velocity.x) > Hero.MAX_VELOCITY)
-		{
-			hero.velocity.x = Math.signum(hero.velocity.x) * Hero.MAX_VELOCITY;
-		}
- 
-		// clamp the velocity to 0 if it's < 1, and set the state to standing
-		/*
-		if (Math.abs(hero.velocity.x) < 0.001)
-		{
-			hero.velocity.x = 0;
-			if (hero.grounded)
-				hero.state = Hero.State.Standing;
-		}*/
- 
-		// multiply by delta time so we know how far we go
-		// in this frame
-		hero.velocity.scl(deltaTime);
- 
-		// perform collision detection & response, on each axis, separately
-		// if the hero is moving right, check the tiles to the right of it's
-		// right bounding box edge, otherwise check the ones to the left
-		Rectangle heroRect = rectPool.obtain();
-		heroRect.set(hero.position.x, hero.position.y, Hero.WIDTH, Hero.HEIGHT);
-		int startX, startY, endX, endY;
-		if (hero.velocity.x > 0)
-		{
-			startX = endX = (int) (hero.position.x + Hero.WIDTH + hero.velocity.x);
-		}
-		else
-		{
-			startX = endX = (int) (hero.position.x + hero.velocity.x);
-		}
-		startY = (int) (hero.position.y);
-		endY = (int) (hero.position.y + Hero.HEIGHT);
-		getTiles(startX, startY, endX, endY, tiles);
-		heroRect.x += hero.velocity.x;
-		for (Rectangle tile : tiles)
-		{
-			if (heroRect.overlaps(tile))
+			if (!Assets.getInstance().update())
 			{
-				hero.velocity.x = 0;
-				break;
+				renderProgress(Assets.getInstance().getProgress());
+				return;
 			}
+			loading = false;
+			start();
 		}
-		heroRect.x = hero.position.x;
  
-		// if the hero is moving upwards, check the tiles to the top of it's
-		// top bounding box edge, otherwise check the ones to the bottom
-		if (hero.velocity.y > 0)
+		// not timed, INPUT is the per tick snapshot only
+		handleProfilerKeys();
+
+		// run as many fixed ticks as fit in the time since the last frame
+		accumulator += Gdx.graphics.getDeltaTime();
+		int ticks = 0;
+		while (accumulator >= tickTime && ticks < MAX_TICKS_PER_FRAME)
 		{
-			startY = endY = (int) (hero.position.y + Hero.HEIGHT + hero.velocity.y);
+			tick(tickTime);
+			accumulator -= tickTime;
+			ticks++;
 		}
-		else
+		profiler.setCounter(Profiler.TICKS, ticks);
+		if (ticks == MAX_TICKS_PER_FRAME)
 		{
-			startY = endY = (int) (hero.position.y + hero.velocity.y);
+			accumulator = Math.min(accumulator, tickTime);
 		}
-		startX = (int) (hero.position.x);
-		endX = (int) (hero.position.x + Hero.WIDTH);
-		getTiles(startX, startY, endX, endY, tiles);
-		heroRect.y += hero.velocity.y;
-		for (Rectangle tile : tiles)
+		// how far we are between the last tick and the next one
+		float alpha = accumulator / tickTime;
+ 
+		// let the camera follow the koala, x-axis only
+		camera.position.x = lerp(hero.getPreviousPosition().x, hero.getPosition().x, alpha);
+		camera.update();
+		// only what the camera sees is drawn
+		EntityContainer.getInstance().setView(camera);
+ 
+		// page in the chunks around what the camera
+		// sees and render them
+		long start = profiler.start();
+		world.update(camera);
+		profiler.stop(Profiler.WORLD_UPDATE, start);
+		start = profiler.start();
+		chunkRenderer.render(camera);
+		profiler.stop(Profiler.MAP_RENDER, start);
+ 
+		// render the koala, the bombs, the particles and everything else in one batch
+		start = profiler.start();
+		EntityContainer container = EntityContainer.getInstance();
+		container.render(batch, alpha);
+		profiler.stop(Profiler.ENTITY_RENDER, start);
+
+		// darken everything by how much light reaches it
+		start = profiler.start();
+		lightRenderer.render(camera);
+		profiler.stop(Profiler.LIGHT_RENDER, start);
+
+		profiler.setCounter(Profiler.ENTITIES, container.size());
+		profiler.setCounter(Profiler.BODIES, container.getBodies().size());
+		profiler.setCounter(Profiler.RENDERED, container.getRenderedCount());
+		profiler.setCounter(Profiler.DRAW_CALLS, container.getRenderCalls() + chunkRenderer.getDrawCount()
+				+ lightRenderer.getDrawCount());
+		profiler.setCounter(Profiler.CHUNKS, world.getLoadedChunks().size);
+		profiler.setCounter(Profiler.PARTICLES, container.getParticles().size());
+		profiler.frame();
+		profilerOverlay.render(Gdx.graphics.getDeltaTime());
+
+        // roll over the entity allocation count, see EntityContainer.getAllocations()
+        container.getAllocations().frame();
+    }
+
+    /**
+     * F3 toggles the profiler overlay, F4 writes the frames it kept to a CSV file
+     */
+    private void handleProfilerKeys()
+    {
+		boolean overlayKey = Gdx.input.isKeyPressed(Keys.F3);
+		if (overlayKey && !overlayKeyDown)
 		{
-			if (heroRect.overlaps(tile))
-			{
-				// we actually reset the hero y-position here
-				// so it is just below/above the tile we collided with
-				// this removes bouncing :)
-				if (hero.velocity.y > 0)
-				{
-					hero.position.y = tile.y - Hero.HEIGHT;
-					// we hit a block jumping upwards, let's destroy it!
-					TiledMapTileLayer layer = (TiledMapTileLayer) map.getLayers().get(1);
-					layer.setCell((int) tile.x, (int) tile.y, null);
-					
-				}
-				else
-				{
-					hero.position.y = tile.y + tile.height;
-					// if we hit the ground, mark us as grounded so we can jump
-					hero.grounded = true;
-				}
-				hero.velocity.y = 0;
-				break;
-			}
-			//prevents jumping mid air
-			else {
-				hero.grounded = false;
-			}
+			profilerOverlay.setVisible(!profilerOverlay.isVisible());
 		}
-		rectPool.free(heroRect);
- 
-		// unscale the velocity by the inverse delta time and set 
-		// the latest position
-		hero.position.add(hero.velocity);
-		hero.velocity.scl(1 / deltaTime);
- 
-		// Apply damping to the velocity on the x-axis so we don't
-		// walk infinitely once a key was pressed
-		hero.velocity.x *= Hero.DAMPING;
- 
-	}
+		overlayKeyDown = overlayKey;
 
-    
-	private boolean isTouched(float startX, float endX)
-	{
-		// check if any finge is touch the area between startX and endX
-		// startX/endX are given between 0 (left edge of the screen) and 1 (right edge of the screen)
-		for (int i = 0; i < 2; i++)
+		boolean exportKey = Gdx.input.isKeyPressed(Keys.F4);
+		if (exportKey && !exportKeyDown)
 		{
-			float x = Gdx.input.getX() / (float) Gdx.graphics.getWidth();
-			if (Gdx.input.isTouched(i) && (x >= startX && x <= endX))
+			File file = new File("profile-" + System.currentTimeMillis() + ".csv");
+			try
 			{
-				return true;
+				profiler.exportCsv(file);
+				log.info("Wrote profile to " + file.getAbsolutePath());
 			}
-		}
-		return false;
-	}
-    
-	private void getTiles(int startX, int startY, int endX, int endY, Array<Rectangle> tiles)
-	{
-		TiledMapTileLayer layer = (TiledMapTileLayer) map.getLayers().get(1);
-		rectPool.freeAll(tiles);
-		tiles.clear();
-		for (int y = startY; y <= endY; y++)
-		{
-			for (int x = startX; x <= endX; x++)
+			catch (IOException e)
 			{
-				Cell cell = layer.getCell(x, y);
-				if (cell != null)
-				{
-					Rectangle rect = rectPool.obtain();
-					rect.set(x, y, 1, 1);
-					tiles.add(rect);
-				}
+				log.error("Could not write profile to " + file, e);
 			}
 		}
-	}
-	
-	private void renderHero(float deltaTime)
-	{
-		// based on the Hero state, get the animation frame
-		TextureRegion frame = null;
-		switch (hero.state)
+		exportKeyDown = exportKey;
+    }
+    
+    /**
+     * Draws a bar across the middle of the screen, filled up to progress
+     * @param progress From 0 to 1
+     */
+    private void renderProgress(float progress)
+    {
+		float width = Gdx.graphics.getWidth() * 0.6f;
+		float x = (Gdx.graphics.getWidth() - width) / 2;
+		float y = Gdx.graphics.getHeight() / 2;
+		progressBar.begin(ShapeType.Filled);
+		progressBar.setColor(0.3f, 0.3f, 0.5f, 1);
+		progressBar.rect(x, y, width, 8);
+		progressBar.setColor(1, 1, 1, 1);
+		progressBar.rect(x, y, width * progress, 8);
+		progressBar.end();
+    }
+
+    /**
+     * Advances the simulation by one fixed tick
+     * @param deltaTime Length of a tick in seconds
+     */
+    private void tick(float deltaTime)
+    {
+		// one snapshot of the keys for the whole tick
+		long start = profiler.start();
+		hero.setInput(input.poll());
+		profiler.stop(Profiler.INPUT, start);
+
+		// update the koala and everything else (collision detection, position update)
+		start = profiler.start();
+		EntityContainer.getInstance().update(deltaTime);
+		profiler.stop(Profiler.ENTITY_UPDATE, start);
+		// sand and water react to what was dug last tick, a few cells at a time
+		start = profiler.start();
+		terrain.update();
+		profiler.stop(Profiler.TERRAIN, start);
+		// let the renderer and everything else catch up with the tiles edited this tick
+		world.flushEdits();
+		moveLantern();
+    }
+
+    /**
+     * Moves the hero's light along with it, only when the hero gets to another tile
+     */
+    private void moveLantern()
+    {
+		int x = (int) Math.floor(hero.getPosition().x + hero.getWidth() / 2);
+		int y = (int) Math.floor(hero.getPosition().y + hero.getHeight() / 2);
+		if (x != lanternX || y != lanternY)
 		{
-			case Standing:
-				frame = stand.getKeyFrame(hero.stateTime);
-				break;
-			case Walking:
-				frame = walk.getKeyFrame(hero.stateTime);
-				break;
-			case Jumping:
-				frame = jump.getKeyFrame(hero.stateTime);
-				break;
-			default:
-				Gdx.app.log(DigGame.LOG, "PANIC! State = " + hero.state.name());
+			lightMap.moveLight(lanternX, lanternY, x, y, LANTERN_LIGHT);
+			lanternX = x;
+			lanternY = y;
 		}
- 
-		// draw the Hero, depending on the current velocity
-		// on the x-axis, draw the Hero facing either right
-		// or left
-		SpriteBatch batch = renderer.getSpriteBatch();
-		batch.begin();
-		if (hero.facesRight)
+    }
+
+    /**
+     * Records the input of every tick to file, written when the game is closed. Call before create()
+     */
+    public void setRecordingFile(File file)
+    {
+    	recordingFile = file;
+    }
+
+    /**
+     * @param ticksPerSecond How often the simulation is stepped per second
+     */
+    public void setTickRate(int ticksPerSecond)
+    {
+    	tickTime = 1f / ticksPerSecond;
+    }
+
+    public int getTickRate()
+    {
+    	return Math.round(1 / tickTime);
+    }
+
+    private static float lerp(float from, float to, float alpha)
+    {
+    	return from + (to - from) * alpha;
+    }
+
+    private void writeRecording()
+    {
+		InputRecording recording = recorder.getRecording();
+		try
 		{
-			batch.draw(frame, hero.position.x, hero.position.y, Hero.WIDTH, Hero.HEIGHT);
+			recording.write(recordingFile);
+			log.info("Wrote " + recording.size() + " ticks of input to " + recordingFile.getAbsolutePath());
 		}
-		else
+		catch (IOException e)
 		{
-			batch.draw(frame, hero.position.x + Hero.WIDTH, hero.position.y, -Hero.WIDTH, Hero.HEIGHT);
+			log.error("Could not write input recording to " + recordingFile, e);
 		}
-		batch.end();
-	}
-	
-	private void renderExplosion (float deltaTime) {
-		explosion.stateTime = explosion.stateTime + deltaTime;
-		TextureRegion frame = circles.getKeyFrame(explosion.stateTime);
-		SpriteBatch batch = renderer.getSpriteBatch();
-		batch.begin();
-		batch.draw(frame, explosion.position.x, explosion.position.y, 1, 1);
-		batch.end();
-	}
- 
-	
+    }
+
     @Override
     public void pause()
     {
-        Gdx.app.log( DigGame.LOG, "Pausing game" );
+        log.info( "Pausing game" );
     }
  
     @Override
     public void resume()
     {
-        Gdx.app.log( DigGame.LOG, "Resuming game" );
+        log.info( "Resuming game" );
     }
  
     @Override
     public void dispose()
     {
-        Gdx.app.log( DigGame.LOG, "Disposing game" );
+        log.info( "Disposing game" );
+        progressBar.dispose();
+        if (!loading)
+        {
+        	if (recorder != null)
+        	{
+        		writeRecording();
+        	}
+        	batch.dispose();
+        	profilerOverlay.dispose();
+        	chunkRenderer.dispose();
+        	lightRenderer.dispose();
+        	lightMap.dispose();
+        	terrain.dispose();
+        	world.removeListener(EntityContainer.getInstance().getParticles());
+        	world.dispose();
+        	EntityFactory.getInstance().dispose();
+        	EntityContainer.getInstance().setThreads(1);
+        }
+        Assets.getInstance().dispose();
     }
 }
\ No newline at end of file
@@ -1,12 +1,29 @@
 package dig;
 
-import com.badlogic.gdx.ApplicationListener;
+import java.io.File;
+import java.util.Arrays;
+
 import com.badlogic.gdx.backends.lwjgl.LwjglApplication;
 
 public class DigLauncher {
     public static void main(String[] args) {
+            // -headless runs the simulation without a window, the remaining arguments are its options
+            if (args.length > 0 && args[0].equals("-headless")) {
+                Simulation.main(Arrays.copyOfRange(args, 1, args.length));
+                return;
+            }
+            // -replay plays back a recording without a window, the remaining arguments are its options
+            if (args.length > 0 && args[0].equals("-replay")) {
+                Replay.main(Arrays.copyOfRange(args, 1, args.length));
+                return;
+            }
+
             // create the listener that will receive the application events
-            ApplicationListener listener = new DigGame();
+            DigGame listener = new DigGame();
+            // -record file writes the input of the session to file when the game is closed
+            if (args.length > 1 && args[0].equals("-record")) {
+                listener.setRecordingFile(new File(args[1]));
+            }
      
             // define the window's title
             String title = "Dig";
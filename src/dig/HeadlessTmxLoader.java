@@ -0,0 +1,41 @@
+package dig;
+
+import java.io.IOException;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.maps.tiled.TiledMap;
+import com.badlogic.gdx.maps.tiled.TiledMapTileSet;
+import com.badlogic.gdx.maps.tiled.TmxMapLoader;
+import com.badlogic.gdx.maps.tiled.tiles.StaticTiledMapTile;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.XmlReader.Element;
+
+/**
+ * Runs the parsing half of TmxMapLoader: reads the XML and decodes the tile layers, but loads no tile set images,
+ * since those need a GL context. Tiles get an empty region so the layers hold real tile ids, which is all
+ * TiledMapChunkGenerator needs to build the same world as the game without a window.
+ */
+public class HeadlessTmxLoader extends TmxMapLoader {
+	// Tiles the placeholder tile set has, enough for tileSet.png
+	private static final int TILES = 256;
+
+	public TiledMap parse(FileHandle file) throws IOException {
+		Element root = xml.parse(file);
+		TiledMap map = new TiledMap();
+
+		TiledMapTileSet tileSet = new TiledMapTileSet();
+		for (int id = 1; id <= TILES; id++) {
+			StaticTiledMapTile tile = new StaticTiledMapTile(new TextureRegion());
+			tile.setId(id);
+			tileSet.putTile(id, tile);
+		}
+		map.getTileSets().addTileSet(tileSet);
+
+		Array<Element> layers = root.getChildrenByName("layer");
+		for (int i = 0; i < layers.size; i++) {
+			loadTileLayer(map, layers.get(i));
+		}
+		return map;
+	}
+}
@@ -0,0 +1,167 @@
+package dig;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import entities.InputState;
+
+/**
+ * The input of every tick of a play session, along with what is needed to start the same session again: the world
+ * seed, the tick rate and where the Hero spawned. Together with a fresh, unsaved world that is enough to repeat the
+ * session exactly, see Replay.
+ * Saved compactly: the header, then runs of ticks with the same input as one byte of InputState bits followed by the
+ * length of the run in 7 bit groups, so holding a key for a second takes 2 bytes instead of 60.
+ */
+public class InputRecording {
+	private static final int MAGIC = 0x44494752; // "DIGR"
+	private static final int VERSION = 1;
+
+	private final long seed;
+	private final int tickRate;
+	private final float spawnX, spawnY;
+	private byte[] ticks; // Tick, InputState bits
+	private int size;
+
+	/**
+	 * @param seed Seed of the world the session is played in
+	 * @param tickRate Ticks per second of the session
+	 * @param spawnX Where the Hero starts
+	 */
+	public InputRecording(long seed, int tickRate, float spawnX, float spawnY) {
+		this.seed = seed;
+		this.tickRate = tickRate;
+		this.spawnX = spawnX;
+		this.spawnY = spawnY;
+		ticks = new byte[1024];
+	}
+
+	/**
+	 * Appends the input of the next tick
+	 */
+	public void add(InputState state) {
+		if (size == ticks.length) {
+			byte[] newTicks = new byte[size * 2];
+			System.arraycopy(ticks, 0, newTicks, 0, size);
+			ticks = newTicks;
+		}
+		ticks[size++] = (byte) state.getBits();
+	}
+
+	/**
+	 * @return Input of tick, the first tick is 0
+	 */
+	public InputState get(int tick) {
+		return InputState.of(ticks[tick]);
+	}
+
+	/**
+	 * @return Number of ticks recorded
+	 */
+	public int size() {
+		return size;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public int getTickRate() {
+		return tickRate;
+	}
+
+	public float getSpawnX() {
+		return spawnX;
+	}
+
+	public float getSpawnY() {
+		return spawnY;
+	}
+
+	public void write(File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeLong(seed);
+			out.writeShort(tickRate);
+			out.writeFloat(spawnX);
+			out.writeFloat(spawnY);
+			out.writeInt(size);
+			int start = 0;
+			while (start < size) {
+				int end = start + 1;
+				while (end < size && ticks[end] == ticks[start]) {
+					end++;
+				}
+				out.writeByte(ticks[start]);
+				writeLength(out, end - start);
+				start = end;
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	public static InputRecording read(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC) {
+				throw new IOException(file + " is not an input recording");
+			}
+			int version = in.readUnsignedByte();
+			if (version != VERSION) {
+				throw new IOException(file + " is version " + version + " of the format, only " + VERSION
+						+ " can be read");
+			}
+			InputRecording recording = new InputRecording(in.readLong(), in.readUnsignedShort(), in.readFloat(),
+					in.readFloat());
+			int size = in.readInt();
+			recording.ticks = new byte[Math.max(size, 1)];
+			while (recording.size < size) {
+				byte bits = in.readByte();
+				int length = readLength(in);
+				if (length > size - recording.size) {
+					throw new IOException(file + " has more ticks than its header says");
+				}
+				for (int i = 0; i < length; i++) {
+					recording.ticks[recording.size++] = bits;
+				}
+			}
+			return recording;
+		} catch (EOFException e) {
+			throw new IOException(file + " ends early");
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes length 7 bits per byte, lowest bits first, the top bit set on every byte but the last
+	 */
+	private static void writeLength(DataOutputStream out, int length) throws IOException {
+		while (length >= 0x80) {
+			out.writeByte((length & 0x7f) | 0x80);
+			length >>>= 7;
+		}
+		out.writeByte(length);
+	}
+
+	private static int readLength(DataInputStream in) throws IOException {
+		int length = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			length |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return length;
+			}
+		}
+		throw new IOException("Run length too long");
+	}
+}
@@ -0,0 +1,199 @@
+package dig;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Properties;
+
+import com.badlogic.gdx.Input.Keys;
+import com.badlogic.gdx.utils.IntArray;
+
+import entities.Action;
+
+/**
+ * Which keys and which parts of a touch screen trigger each Action. Can be saved to and loaded from a properties
+ * file with one line per Action, keys by their name in Input.Keys and touch zones as the left and right edge of
+ * the zone from 0 (left of the screen) to 1 (right of the screen):
+ *
+ * <pre>
+ * Jump=SPACE UP Q
+ * Jump.touch=0.75 1
+ * </pre>
+ */
+public class KeyBindings {
+	private static final Action[] ACTIONS = Action.values();
+
+	private final IntArray[] keys; // Action ordinal, key codes
+	private final float[] touchStart, touchEnd; // Action ordinal, from 0 to 1, start > end for no zone
+
+	public KeyBindings() {
+		keys = new IntArray[ACTIONS.length];
+		touchStart = new float[ACTIONS.length];
+		touchEnd = new float[ACTIONS.length];
+		for (int i = 0; i < ACTIONS.length; i++) {
+			keys[i] = new IntArray();
+			touchStart[i] = 1;
+			touchEnd[i] = 0;
+		}
+	}
+
+	/**
+	 * @return Arrow keys, WASD and space, and the bottom of the screen split in touch zones for left, right, bomb and jump
+	 */
+	public static KeyBindings createDefault() {
+		KeyBindings bindings = new KeyBindings();
+		bindings.bind(Action.Jump, Keys.SPACE);
+		bindings.bind(Action.Jump, Keys.UP);
+		bindings.bind(Action.Jump, Keys.Q);
+		bindings.bind(Action.Left, Keys.LEFT);
+		bindings.bind(Action.Left, Keys.A);
+		bindings.bind(Action.Right, Keys.RIGHT);
+		bindings.bind(Action.Right, Keys.D);
+		bindings.bind(Action.Bomb, Keys.DOWN);
+		bindings.bind(Action.Bomb, Keys.S);
+		bindings.setTouchZone(Action.Left, 0, 0.25f);
+		bindings.setTouchZone(Action.Right, 0.25f, 0.5f);
+		bindings.setTouchZone(Action.Bomb, 0.5f, 0.75f);
+		bindings.setTouchZone(Action.Jump, 0.75f, 1);
+		return bindings;
+	}
+
+	/**
+	 * Makes key trigger action, as well as any keys already bound to it
+	 * @param key One of Input.Keys
+	 */
+	public void bind(Action action, int key) {
+		IntArray actionKeys = keys[action.ordinal()];
+		if (!actionKeys.contains(key)) {
+			actionKeys.add(key);
+		}
+	}
+
+	/**
+	 * Removes every key and the touch zone from action
+	 */
+	public void unbind(Action action) {
+		keys[action.ordinal()].clear();
+		setTouchZone(action, 1, 0);
+	}
+
+	/**
+	 * @return Keys bound to action, do not modify
+	 */
+	public IntArray getKeys(Action action) {
+		return keys[action.ordinal()];
+	}
+
+	/**
+	 * Makes touching the screen between startX and endX trigger action, given from 0 (left edge of the screen) to 1
+	 * (right edge of the screen). startX greater than endX removes the zone
+	 */
+	public void setTouchZone(Action action, float startX, float endX) {
+		touchStart[action.ordinal()] = startX;
+		touchEnd[action.ordinal()] = endX;
+	}
+
+	/**
+	 * @param x From 0 (left edge of the screen) to 1 (right edge of the screen)
+	 */
+	public boolean isInTouchZone(Action action, float x) {
+		return x >= touchStart[action.ordinal()] && x <= touchEnd[action.ordinal()];
+	}
+
+	/**
+	 * Replaces the bindings of every Action listed in file, Actions that aren't listed keep their bindings
+	 */
+	public void load(File file) throws IOException {
+		Properties properties = new Properties();
+		InputStream in = new FileInputStream(file);
+		try {
+			properties.load(in);
+		} finally {
+			in.close();
+		}
+		for (int i = 0; i < ACTIONS.length; i++) {
+			Action action = ACTIONS[i];
+			String keyNames = properties.getProperty(action.name());
+			if (keyNames != null) {
+				keys[i].clear();
+				for (String name : keyNames.trim().split("\\s+")) {
+					if (name.length() > 0) {
+						bind(action, toKey(name));
+					}
+				}
+			}
+			String zone = properties.getProperty(action.name() + ".touch");
+			if (zone != null) {
+				String[] edges = zone.trim().split("\\s+");
+				if (edges.length != 2) {
+					throw new IOException("Expected start and end of the touch zone for " + action + ": " + zone);
+				}
+				try {
+					setTouchZone(action, Float.parseFloat(edges[0]), Float.parseFloat(edges[1]));
+				} catch (NumberFormatException e) {
+					throw new IOException("Bad touch zone for " + action + ": " + zone);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes every binding to file, in the format load() reads
+	 */
+	public void save(File file) throws IOException {
+		Properties properties = new Properties();
+		for (int i = 0; i < ACTIONS.length; i++) {
+			StringBuilder names = new StringBuilder();
+			for (int k = 0; k < keys[i].size; k++) {
+				names.append(k > 0 ? " " : "").append(toName(keys[i].get(k)));
+			}
+			properties.setProperty(ACTIONS[i].name(), names.toString());
+			if (touchStart[i] <= touchEnd[i]) {
+				properties.setProperty(ACTIONS[i].name() + ".touch", touchStart[i] + " " + touchEnd[i]);
+			}
+		}
+		OutputStream out = new FileOutputStream(file);
+		try {
+			properties.store(out, "Key bindings, key names are the constants of com.badlogic.gdx.Input.Keys");
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @return Key code of the Input.Keys constant called name, or name itself if it is a number
+	 */
+	private static int toKey(String name) throws IOException {
+		if (name.matches("\\d+")) {
+			return Integer.parseInt(name);
+		}
+		try {
+			return Keys.class.getField(name.toUpperCase()).getInt(null);
+		} catch (NoSuchFieldException e) {
+			throw new IOException("Unknown key " + name);
+		} catch (IllegalAccessException e) {
+			throw new IOException("Unknown key " + name);
+		}
+	}
+
+	/**
+	 * @return Name of the Input.Keys constant for key, several names share some codes and any of them may be given
+	 */
+	private static String toName(int key) {
+		for (Field field : Keys.class.getFields()) {
+			try {
+				if (Modifier.isStatic(field.getModifiers()) && field.getType() == int.class && field.getInt(null) == key) {
+					return field.getName();
+				}
+			} catch (IllegalAccessException e) {
+				// public, can't happen
+			}
+		}
+		return Integer.toString(key);
+	}
+}
@@ -0,0 +1,58 @@
+package dig;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.utils.IntArray;
+
+import entities.Action;
+import entities.InputSource;
+import entities.InputState;
+
+/**
+ * Reads the keyboard and touch screen through KeyBindings. Every key bound is read once per poll and every pointer
+ * once, however many Actions use them, and the result is one InputState for the whole tick.
+ */
+public class KeyboardInput implements InputSource {
+	private static final Action[] ACTIONS = Action.values();
+	private static final int POINTERS = 2; // Fingers checked for touch zones
+
+	private KeyBindings bindings;
+
+	public KeyboardInput(KeyBindings bindings) {
+		this.bindings = bindings;
+	}
+
+	@Override
+	public InputState poll() {
+		int bits = 0;
+		for (int i = 0; i < ACTIONS.length; i++) {
+			IntArray keys = bindings.getKeys(ACTIONS[i]);
+			for (int k = 0; k < keys.size; k++) {
+				if (Gdx.input.isKeyPressed(keys.get(k))) {
+					bits |= 1 << i;
+					break;
+				}
+			}
+		}
+		float width = Gdx.graphics.getWidth();
+		for (int pointer = 0; pointer < POINTERS; pointer++) {
+			if (!Gdx.input.isTouched(pointer)) {
+				continue;
+			}
+			float x = Gdx.input.getX(pointer) / width;
+			for (int i = 0; i < ACTIONS.length; i++) {
+				if (bindings.isInTouchZone(ACTIONS[i], x)) {
+					bits |= 1 << i;
+				}
+			}
+		}
+		return InputState.of(bits);
+	}
+
+	public KeyBindings getBindings() {
+		return bindings;
+	}
+
+	public void setBindings(KeyBindings bindings) {
+		this.bindings = bindings;
+	}
+}
@@ -0,0 +1,437 @@
+package dig;
+
+import java.util.Arrays;
+
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.Pool;
+
+/**
+ * Light levels from 0 (dark) to MAX_LIGHT for every loaded tile, in two channels: sky light, which fills everything
+ * open to the sky and shines straight down shafts without fading, and block light from point lights such as
+ * torches or the Hero's lantern. Light spreads through air losing one level per tile, and lights the faces of solid
+ * tiles without passing through them.
+ * Nothing is ever recomputed for the whole world. Edits, chunks loading and lights moving each run a flood fill
+ * from just the cells involved: removing light clears the cells that got their light through the changed cells
+ * and then fills back in from the edges of what was cleared, adding light only spreads as far as it raises levels.
+ * Kept up to date as a MapListener, every chunk's light has a revision so the renderer can tell which changed.
+ */
+public class LightMap implements MapListener {
+	public static final int MAX_LIGHT = 15;
+
+	private static final int SKY = 0, BLOCK = 1, CHANNELS = 2;
+	private static final int AIR_COST = 1; // Levels lost spreading into air
+	private static final int SOLID_COST = 3; // Levels lost lighting the face of a solid tile
+
+	// Neighbours, in the order they are visited
+	private static final int[] DX = { 1, -1, 0, 0 };
+	private static final int[] DY = { 0, 0, 1, -1 };
+
+	/**
+	 * Light of one chunk
+	 */
+	static class ChunkLight {
+		Chunk chunk;
+		final byte[][] levels = new byte[CHANNELS][Chunk.SIZE * Chunk.SIZE]; // Channel, localY * SIZE + localX
+		int revision; // Goes up on every change
+		byte[] sources; // localY * SIZE + localX, point light levels of the chunk from pointLights, null if none
+
+		/**
+		 * @return Brightest of the channels of cell i
+		 */
+		int getLight(int i) {
+			return Math.max(levels[SKY][i], levels[BLOCK][i]);
+		}
+	}
+
+	private final MapResources world;
+	private final int skyHeight;
+	private final LongMap<ChunkLight> lights; // Chunk.key(x, y), light of the chunk
+	private final Pool<ChunkLight> lightPool;
+	// Chunk.key(x, y) of the chunk, localY * SIZE + localX, level of the point light on the tile. Only chunks with a
+	// light have an entry, and it is kept while the chunk is unloaded so its lights are back when it is loaded
+	private final LongMap<byte[]> pointLights;
+	private final LightQueue addQueue, removeQueue;
+
+	// The chunk find() returned last, most lookups are right next to the one before
+	private ChunkLight found;
+	private int foundX, foundY;
+
+	/**
+	 * @param skyHeight Every air tile from this height up is lit by the sky
+	 */
+	public LightMap(MapResources world, int skyHeight) {
+		this.world = world;
+		this.skyHeight = skyHeight;
+		lights = new LongMap<ChunkLight>();
+		lightPool = new Pool<ChunkLight>() {
+			@Override
+			protected ChunkLight newObject() {
+				return new ChunkLight();
+			}
+		};
+		pointLights = new LongMap<byte[]>();
+		addQueue = new LightQueue();
+		removeQueue = new LightQueue();
+		world.addListener(this);
+		// chunks that were loaded before us
+		for (int i = 0; i < world.getLoadedChunks().size; i++) {
+			chunkLoaded(world.getLoadedChunks().get(i));
+		}
+	}
+
+	/**
+	 * @return Light level of the tile at world tile x, y, 0 if it isn't loaded
+	 */
+	public int getLight(int x, int y) {
+		ChunkLight light = find(x, y);
+		return light == null ? 0 : light.getLight(index(x, y));
+	}
+
+	/**
+	 * @return Light of a loaded chunk, null if it isn't loaded
+	 */
+	ChunkLight getChunkLight(Chunk chunk) {
+		return lights.get(Chunk.key(chunk.getChunkX(), chunk.getChunkY()));
+	}
+
+	/**
+	 * Puts a point light on the tile at x, y, replacing any light already there
+	 * @param level Light level at the tile, up to MAX_LIGHT, the light reaches level - 1 tiles away
+	 */
+	public void addLight(int x, int y, int level) {
+		long key = Chunk.key(Chunk.toChunk(x), Chunk.toChunk(y));
+		byte[] sources = pointLights.get(key);
+		if (sources == null) {
+			sources = new byte[Chunk.SIZE * Chunk.SIZE];
+			pointLights.put(key, sources);
+			ChunkLight loaded = lights.get(key);
+			if (loaded != null) {
+				loaded.sources = sources;
+			}
+		} else if (sources[index(x, y)] != 0) {
+			removeLight(x, y);
+		}
+		level = Math.min(level, MAX_LIGHT);
+		sources[index(x, y)] = (byte) level;
+		long start = Profiler.getInstance().start();
+		ChunkLight light = find(x, y);
+		if (light != null && sourceLevel(BLOCK, x, y, light) > light.levels[BLOCK][index(x, y)]) {
+			set(light, BLOCK, index(x, y), level);
+			addQueue.push(x, y, level);
+			spread(BLOCK);
+		}
+		Profiler.getInstance().stop(Profiler.LIGHTING, start);
+	}
+
+	/**
+	 * Takes away the point light on the tile at x, y, if there is one
+	 */
+	public void removeLight(int x, int y) {
+		byte[] sources = pointLights.get(Chunk.key(Chunk.toChunk(x), Chunk.toChunk(y)));
+		if (sources == null || sources[index(x, y)] == 0) {
+			return;
+		}
+		sources[index(x, y)] = 0;
+		long start = Profiler.getInstance().start();
+		ChunkLight light = find(x, y);
+		if (light != null) {
+			int level = light.levels[BLOCK][index(x, y)];
+			set(light, BLOCK, index(x, y), 0);
+			removeQueue.push(x, y, level);
+			unspread(BLOCK);
+			spread(BLOCK);
+		}
+		Profiler.getInstance().stop(Profiler.LIGHTING, start);
+	}
+
+	/**
+	 * Moves a point light, for lights carried around
+	 */
+	public void moveLight(int fromX, int fromY, int toX, int toY, int level) {
+		removeLight(fromX, fromY);
+		addLight(toX, toY, level);
+	}
+
+	@Override
+	public void chunkLoaded(Chunk chunk) {
+		long start = Profiler.getInstance().start();
+		ChunkLight light = lightPool.obtain();
+		light.chunk = chunk;
+		light.revision++;
+		light.sources = pointLights.get(Chunk.key(chunk.getChunkX(), chunk.getChunkY()));
+		lights.put(Chunk.key(chunk.getChunkX(), chunk.getChunkY()), light);
+		found = null;
+		int tileX = chunk.getTileX(), tileY = chunk.getTileY();
+		for (int channel = 0; channel < CHANNELS; channel++) {
+			for (int y = 0; y < Chunk.SIZE; y++) {
+				for (int x = 0; x < Chunk.SIZE; x++) {
+					int level = sourceLevel(channel, tileX + x, tileY + y, light);
+					light.levels[channel][y * Chunk.SIZE + x] = (byte) level;
+					if (level > 0) {
+						addQueue.push(tileX + x, tileY + y, level);
+					}
+				}
+			}
+			// light already in the neighbours flows in
+			pushRing(tileX, tileY, tileX + Chunk.MASK, tileY + Chunk.MASK);
+			spread(channel);
+		}
+		Profiler.getInstance().stop(Profiler.LIGHTING, start);
+	}
+
+	@Override
+	public void chunkUnloaded(Chunk chunk) {
+		// light that came from this chunk stays in its neighbours until something near it changes, the chunk is
+		// off screen and will light the same way when it comes back
+		ChunkLight light = lights.remove(Chunk.key(chunk.getChunkX(), chunk.getChunkY()));
+		if (light != null) {
+			light.chunk = null;
+			light.sources = null;
+			for (int channel = 0; channel < CHANNELS; channel++) {
+				Arrays.fill(light.levels[channel], (byte) 0);
+			}
+			lightPool.free(light);
+		}
+		found = null;
+	}
+
+	@Override
+	public void tilesChanged(Chunk chunk, int x1, int y1, int x2, int y2) {
+		long start = Profiler.getInstance().start();
+		for (int channel = 0; channel < CHANNELS; channel++) {
+			// take out all light that went through the changed tiles...
+			for (int y = y1; y <= y2; y++) {
+				for (int x = x1; x <= x2; x++) {
+					ChunkLight light = find(x, y);
+					int i = index(x, y);
+					int level = light.levels[channel][i];
+					if (level > 0) {
+						set(light, channel, i, 0);
+						removeQueue.push(x, y, level);
+					}
+				}
+			}
+			unspread(channel);
+			// ...then put back what the tiles are now
+			for (int y = y1; y <= y2; y++) {
+				for (int x = x1; x <= x2; x++) {
+					ChunkLight light = find(x, y);
+					int level = sourceLevel(channel, x, y, light);
+					if (level > light.levels[channel][index(x, y)]) {
+						set(light, channel, index(x, y), level);
+						addQueue.push(x, y, level);
+					}
+				}
+			}
+			pushRing(x1, y1, x2, y2);
+			spread(channel);
+		}
+		Profiler.getInstance().stop(Profiler.LIGHTING, start);
+	}
+
+	@Override
+	public void tileDug(int x, int y, int id) {
+		// the light is fixed up once the edit is flushed, together with the tick's other edits
+	}
+
+	/**
+	 * Queues the tiles just around the rectangle, so their light spreads into it
+	 */
+	private void pushRing(int x1, int y1, int x2, int y2) {
+		for (int x = x1 - 1; x <= x2 + 1; x++) {
+			addQueue.push(x, y1 - 1, 0);
+			addQueue.push(x, y2 + 1, 0);
+		}
+		for (int y = y1; y <= y2; y++) {
+			addQueue.push(x1 - 1, y, 0);
+			addQueue.push(x2 + 1, y, 0);
+		}
+	}
+
+	/**
+	 * Spreads light out from every tile in the add queue, as far as it makes tiles brighter
+	 */
+	private void spread(int channel) {
+		while (!addQueue.isEmpty()) {
+			int x = addQueue.popX(), y = addQueue.popY();
+			addQueue.pop();
+			ChunkLight light = find(x, y);
+			if (light == null || light.chunk.isSolid(x & Chunk.MASK, y & Chunk.MASK)) {
+				continue;
+			}
+			// the level now, it may have gone up since the tile was queued
+			int level = light.levels[channel][index(x, y)];
+			if (level <= 0) {
+				continue;
+			}
+			for (int d = 0; d < 4; d++) {
+				int nx = x + DX[d], ny = y + DY[d];
+				ChunkLight neighbour = find(nx, ny);
+				if (neighbour == null) {
+					continue;
+				}
+				int i = index(nx, ny);
+				boolean solid = neighbour.chunk.isSolid(nx & Chunk.MASK, ny & Chunk.MASK);
+				int newLevel;
+				if (channel == SKY && DY[d] < 0 && level == MAX_LIGHT && !solid) {
+					// sunlight goes straight down without fading
+					newLevel = MAX_LIGHT;
+				} else {
+					newLevel = level - (solid ? SOLID_COST : AIR_COST);
+				}
+				if (newLevel > neighbour.levels[channel][i]) {
+					set(neighbour, channel, i, newLevel);
+					if (!solid) {
+						addQueue.push(nx, ny, newLevel);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Clears the light that came from the tiles in the remove queue, queueing the edges of the cleared area and any
+	 * sources inside it in the add queue so spread() can fill it back in
+	 */
+	private void unspread(int channel) {
+		while (!removeQueue.isEmpty()) {
+			int x = removeQueue.popX(), y = removeQueue.popY();
+			int oldLevel = removeQueue.pop();
+			for (int d = 0; d < 4; d++) {
+				int nx = x + DX[d], ny = y + DY[d];
+				ChunkLight neighbour = find(nx, ny);
+				if (neighbour == null) {
+					continue;
+				}
+				int i = index(nx, ny);
+				int level = neighbour.levels[channel][i];
+				if (level == 0) {
+					continue;
+				}
+				boolean fromHere = level < oldLevel
+						|| (channel == SKY && DY[d] < 0 && oldLevel == MAX_LIGHT && level == MAX_LIGHT);
+				if (!fromHere) {
+					// lit from somewhere else, it lights the cleared area back up
+					addQueue.push(nx, ny, level);
+					continue;
+				}
+				set(neighbour, channel, i, 0);
+				if (neighbour.chunk.isSolid(nx & Chunk.MASK, ny & Chunk.MASK)) {
+					// light doesn't go through solid tiles, but the face may be lit from another side
+					for (int e = 0; e < 4; e++) {
+						addQueue.push(nx + DX[e], ny + DY[e], 0);
+					}
+					continue;
+				}
+				removeQueue.push(nx, ny, level);
+				int source = sourceLevel(channel, nx, ny, neighbour);
+				if (source > 0) {
+					set(neighbour, channel, i, source);
+					addQueue.push(nx, ny, source);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return Level the tile gives off by itself, 0 if it isn't a light source
+	 */
+	private int sourceLevel(int channel, int x, int y, ChunkLight light) {
+		if (light.chunk.isSolid(x & Chunk.MASK, y & Chunk.MASK)) {
+			return 0;
+		}
+		if (channel == SKY) {
+			return y >= skyHeight ? MAX_LIGHT : 0;
+		}
+		return light.sources == null ? 0 : light.sources[index(x, y)];
+	}
+
+	private void set(ChunkLight light, int channel, int i, int level) {
+		light.levels[channel][i] = (byte) level;
+		light.revision++;
+	}
+
+	/**
+	 * @return Light of the chunk holding world tile x, y, null if it isn't loaded
+	 */
+	private ChunkLight find(int x, int y) {
+		int chunkX = Chunk.toChunk(x), chunkY = Chunk.toChunk(y);
+		if (found == null || chunkX != foundX || chunkY != foundY) {
+			found = lights.get(Chunk.key(chunkX, chunkY));
+			if (found == null) {
+				return null;
+			}
+			foundX = chunkX;
+			foundY = chunkY;
+		}
+		return found;
+	}
+
+	private static int index(int x, int y) {
+		return (y & Chunk.MASK) * Chunk.SIZE + (x & Chunk.MASK);
+	}
+
+	public void dispose() {
+		world.removeListener(this);
+		lights.clear();
+		pointLights.clear();
+		found = null;
+	}
+
+	/**
+	 * Growable ring buffer of tiles and light levels, so flood fills don't allocate once it has grown
+	 */
+	private static class LightQueue {
+		private int[] xs = new int[1024], ys = new int[1024], levels = new int[1024];
+		private int head, size;
+
+		void push(int x, int y, int level) {
+			if (size == xs.length) {
+				grow();
+			}
+			int tail = (head + size) & (xs.length - 1);
+			xs[tail] = x;
+			ys[tail] = y;
+			levels[tail] = level;
+			size++;
+		}
+
+		int popX() {
+			return xs[head];
+		}
+
+		int popY() {
+			return ys[head];
+		}
+
+		/**
+		 * Removes the head
+		 * @return Level of the tile removed
+		 */
+		int pop() {
+			int level = levels[head];
+			head = (head + 1) & (xs.length - 1);
+			size--;
+			return level;
+		}
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		private void grow() {
+			int capacity = xs.length * 2;
+			int[] newXs = new int[capacity], newYs = new int[capacity], newLevels = new int[capacity];
+			for (int i = 0; i < size; i++) {
+				int j = (head + i) & (xs.length - 1);
+				newXs[i] = xs[j];
+				newYs[i] = ys[j];
+				newLevels[i] = levels[j];
+			}
+			xs = newXs;
+			ys = newYs;
+			levels = newLevels;
+			head = 0;
+		}
+	}
+}
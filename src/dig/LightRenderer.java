@@ -0,0 +1,164 @@
+package dig;
+
+import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Pixmap.Blending;
+import com.badlogic.gdx.graphics.Pixmap.Format;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.Texture.TextureFilter;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.LongMap;
+
+/**
+ * Darkens the world by its LightMap: every visible chunk's light is baked into a chunk sized texture, one texel per
+ * tile, which is stretched over the chunk in black with the darkness as alpha. A chunk's texture is only uploaded
+ * again when its light revision changed, so a frame where nothing was dug or moved uploads nothing.
+ * Draw after the tiles and Entitys so the dark covers them all.
+ */
+public class LightRenderer implements MapListener {
+	private static final float MAX_DARKNESS = 0.95f; // Alpha of an unlit tile
+
+	private final MapResources world;
+	private final LightMap lightMap;
+	private final SpriteBatch batch;
+	private final Pixmap pixmap; // Scratch space a chunk's light is written to before uploading
+	private final int[] colors; // Light level, RGBA8888 black with the darkness of that level
+	private final LongMap<LightTexture> textures; // Chunk key, light texture of the chunk
+	private final Array<LightTexture> freeTextures; // Textures of unloaded chunks, for the next chunks to load
+	private int uploads; // Textures uploaded during the last render
+	private int draws; // Draw calls of the last render
+
+	private static class LightTexture {
+		Texture texture;
+		int revision = -1; // Light revision that was uploaded, -1 for none
+	}
+
+	public LightRenderer(MapResources world, LightMap lightMap) {
+		this.world = world;
+		this.lightMap = lightMap;
+		batch = new SpriteBatch();
+		pixmap = new Pixmap(Chunk.SIZE, Chunk.SIZE, Format.RGBA8888);
+		colors = new int[LightMap.MAX_LIGHT + 1];
+		for (int level = 0; level <= LightMap.MAX_LIGHT; level++) {
+			float darkness = MAX_DARKNESS * (1 - level / (float) LightMap.MAX_LIGHT);
+			colors[level] = Math.round(darkness * 255);
+		}
+		textures = new LongMap<LightTexture>();
+		freeTextures = new Array<LightTexture>(false, 16);
+		world.addListener(this);
+	}
+
+	public void render(OrthographicCamera camera) {
+		uploads = 0;
+		float halfWidth = camera.viewportWidth * camera.zoom / 2;
+		float halfHeight = camera.viewportHeight * camera.zoom / 2;
+		float left = camera.position.x - halfWidth, right = camera.position.x + halfWidth;
+		float bottom = camera.position.y - halfHeight, top = camera.position.y + halfHeight;
+
+		batch.setProjectionMatrix(camera.combined);
+		batch.begin();
+		Array<Chunk> chunks = world.getLoadedChunks();
+		for (int i = 0; i < chunks.size; i++) {
+			Chunk chunk = chunks.get(i);
+			int x = chunk.getTileX(), y = chunk.getTileY();
+			if (x > right || x + Chunk.SIZE < left || y > top || y + Chunk.SIZE < bottom) {
+				continue;
+			}
+			LightMap.ChunkLight light = lightMap.getChunkLight(chunk);
+			if (light == null) {
+				continue;
+			}
+			LightTexture texture = getTexture(chunk);
+			if (texture.revision != light.revision) {
+				upload(light, texture);
+			}
+			batch.draw(texture.texture, x, y, Chunk.SIZE, Chunk.SIZE);
+		}
+		batch.end();
+		draws = batch.renderCalls;
+	}
+
+	private LightTexture getTexture(Chunk chunk) {
+		long key = Chunk.key(chunk.getChunkX(), chunk.getChunkY());
+		LightTexture texture = textures.get(key);
+		if (texture == null) {
+			if (freeTextures.size > 0) {
+				texture = freeTextures.pop();
+			} else {
+				texture = new LightTexture();
+				texture.texture = new Texture(pixmap);
+				// one texel per tile, blocky like the tiles are
+				texture.texture.setFilter(TextureFilter.Nearest, TextureFilter.Nearest);
+			}
+			textures.put(key, texture);
+		}
+		return texture;
+	}
+
+	private void upload(LightMap.ChunkLight light, LightTexture texture) {
+		Blending blending = Pixmap.getBlending();
+		Pixmap.setBlending(Blending.None);
+		for (int y = 0; y < Chunk.SIZE; y++) {
+			for (int x = 0; x < Chunk.SIZE; x++) {
+				// pixmaps start at the top
+				pixmap.drawPixel(x, Chunk.MASK - y, colors[light.getLight(y * Chunk.SIZE + x)]);
+			}
+		}
+		Pixmap.setBlending(blending);
+		texture.texture.draw(pixmap, 0, 0);
+		texture.revision = light.revision;
+		uploads++;
+	}
+
+	/**
+	 * @return Light textures uploaded during the last render
+	 */
+	public int getUploadCount() {
+		return uploads;
+	}
+
+	/**
+	 * @return Draw calls of the last render
+	 */
+	public int getDrawCount() {
+		return draws;
+	}
+
+	@Override
+	public void chunkLoaded(Chunk chunk) {
+	}
+
+	@Override
+	public void chunkUnloaded(Chunk chunk) {
+		LightTexture texture = textures.remove(Chunk.key(chunk.getChunkX(), chunk.getChunkY()));
+		if (texture != null) {
+			texture.revision = -1;
+			freeTextures.add(texture);
+		}
+	}
+
+	@Override
+	public void tilesChanged(Chunk chunk, int x1, int y1, int x2, int y2) {
+		// the LightMap bumps the revision of whatever light changed
+	}
+
+	@Override
+	public void tileDug(int x, int y, int id) {
+		// the LightMap bumps the revision of whatever light changed
+	}
+
+	public void dispose() {
+		world.removeListener(this);
+		for (LightTexture texture : textures.values()) {
+			texture.texture.dispose();
+		}
+		for (int i = 0; i < freeTextures.size; i++) {
+			freeTextures.get(i).texture.dispose();
+		}
+		textures.clear();
+		freeTextures.clear();
+		pixmap.dispose();
+		batch.dispose();
+	}
+}
@@ -0,0 +1,173 @@
+package dig;
+
+import com.badlogic.gdx.Gdx;
+
+/**
+ * Leveled logging that costs nothing when a message isn't going to be written. Messages are built inside the
+ * logger from a prefix and primitive values, so a call whose level is off doesn't build a string or box anything,
+ * and debug calls compile down to nothing unless DEBUG_BUILD is set. A logger can also be rate limited, to log
+ * from code that runs every tick without flooding the console: it writes at most one message per interval and
+ * says how many it dropped in between.
+ * Writes to Gdx.app, or to the console when running without an application (headless tools).
+ */
+public class Logger {
+	// Levels, a logger writes messages at or below the current level
+	public static final int NONE = 0;
+	public static final int ERROR = 1;
+	public static final int INFO = 2;
+	public static final int DEBUG = 3;
+
+	// Compile time switch for debug messages, when false javac and the JIT drop debug calls entirely
+	public static final boolean DEBUG_BUILD = false;
+
+	private static int level = INFO;
+
+	/**
+	 * Sets the level of every logger, NONE turns logging off
+	 */
+	public static void setLevel(int level) {
+		Logger.level = level;
+	}
+
+	public static int getLevel() {
+		return level;
+	}
+
+	/**
+	 * @return Logger writing every message under tag
+	 */
+	public static Logger get(String tag) {
+		return new Logger(tag, 0);
+	}
+
+	/**
+	 * @return Logger writing at most one message per interval under tag, for logging from per tick code
+	 */
+	public static Logger get(String tag, float intervalSeconds) {
+		return new Logger(tag, (long) (intervalSeconds * 1000000000L));
+	}
+
+	private final String tag;
+	private final long interval; // Nanoseconds between messages, 0 for no limit
+	private long lastTime;
+	private int dropped; // Messages left out since the last one written
+
+	private Logger(String tag, long interval) {
+		this.tag = tag;
+		this.interval = interval;
+	}
+
+	public boolean isDebugEnabled() {
+		return DEBUG_BUILD && level >= DEBUG;
+	}
+
+	public boolean isInfoEnabled() {
+		return level >= INFO;
+	}
+
+	public void debug(String message) {
+		if (isDebugEnabled() && allow()) {
+			write(DEBUG, message, null);
+		}
+	}
+
+	public void debug(String prefix, float value) {
+		if (isDebugEnabled() && allow()) {
+			write(DEBUG, prefix + value, null);
+		}
+	}
+
+	public void debug(String prefix, int value) {
+		if (isDebugEnabled() && allow()) {
+			write(DEBUG, prefix + value, null);
+		}
+	}
+
+	public void debug(String prefix, float x, float y) {
+		if (isDebugEnabled() && allow()) {
+			write(DEBUG, prefix + x + ", " + y, null);
+		}
+	}
+
+	public void info(String message) {
+		if (isInfoEnabled() && allow()) {
+			write(INFO, message, null);
+		}
+	}
+
+	public void info(String prefix, float value) {
+		if (isInfoEnabled() && allow()) {
+			write(INFO, prefix + value, null);
+		}
+	}
+
+	public void info(String prefix, int value) {
+		if (isInfoEnabled() && allow()) {
+			write(INFO, prefix + value, null);
+		}
+	}
+
+	public void error(String message) {
+		error(message, null);
+	}
+
+	public void error(String message, Throwable t) {
+		if (level >= ERROR && allow()) {
+			write(ERROR, message, t);
+		}
+	}
+
+	/**
+	 * @return Whether the rate limit lets a message through now, counts it as dropped if not
+	 */
+	private synchronized boolean allow() {
+		if (interval == 0) {
+			return true;
+		}
+		long now = System.nanoTime();
+		if (lastTime != 0 && now - lastTime < interval) {
+			dropped++;
+			return false;
+		}
+		lastTime = now;
+		return true;
+	}
+
+	/**
+	 * @return Messages dropped since the last one written, starting the count over
+	 */
+	private synchronized int takeDropped() {
+		int count = dropped;
+		dropped = 0;
+		return count;
+	}
+
+	private void write(int messageLevel, String message, Throwable t) {
+		int count = takeDropped();
+		if (count > 0) {
+			message = message + " (" + count + " more dropped)";
+		}
+		if (Gdx.app == null) {
+			if (messageLevel == ERROR) {
+				System.err.println(tag + ": " + message);
+				if (t != null) {
+					t.printStackTrace();
+				}
+			} else {
+				System.out.println(tag + ": " + message);
+			}
+			return;
+		}
+		// Gdx.app has its own level, ours already decided, so write debug messages as log
+		if (messageLevel == ERROR) {
+			// the backends print t's stack trace without checking it
+			if (t != null) {
+				Gdx.app.error(tag, message, t);
+			} else {
+				Gdx.app.error(tag, message);
+			}
+		} else {
+			Gdx.app.log(tag, message);
+		}
+	}
+}
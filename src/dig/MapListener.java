@@ -0,0 +1,36 @@
+package dig;
+
+/**
+ * Gets told about chunks coming and going and about edits to their tiles, register with MapResources.addListener.
+ * Lets the renderer, lighting etc. redo only the chunks that actually changed.
+ */
+public interface MapListener {
+	/**
+	 * A chunk was loaded or generated and is now part of the world
+	 */
+	public void chunkLoaded(Chunk chunk);
+
+	/**
+	 * A chunk is about to be unloaded, its tiles are still there during the call
+	 */
+	public void chunkUnloaded(Chunk chunk);
+
+	/**
+	 * Tiles inside a chunk changed since the last flush, called once per chunk from MapResources.flushEdits
+	 * @param chunk Chunk that was edited
+	 * @param x1 Left of the changed tiles in world tiles
+	 * @param y1 Bottom of the changed tiles
+	 * @param x2 Right of the changed tiles, inclusive
+	 * @param y2 Top of the changed tiles, inclusive
+	 */
+	public void tilesChanged(Chunk chunk, int x1, int y1, int x2, int y2);
+
+	/**
+	 * A wall tile was dug out, by digging or by an explosion. Called right away from MapResources.dig, the chunk
+	 * is told about the change at the next flush as usual
+	 * @param x World tile x
+	 * @param y World tile y
+	 * @param id Id of the tile that was dug out
+	 */
+	public void tileDug(int x, int y, int id);
+}
@@ -1,24 +1,622 @@
 package dig;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.badlogic.gdx.graphics.OrthographicCamera;
 import com.badlogic.gdx.maps.tiled.TiledMap;
+import com.badlogic.gdx.maps.tiled.TiledMapTileLayer;
+import com.badlogic.gdx.maps.tiled.TiledMapTileSets;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.Pool;
 
+/**
+ * Owns the world's tiles. The world is split into Chunks that are paged in around the camera and paged out (and
+ * saved if they were dug into) once the camera moves away, so memory only depends on the view distance.
+ * Chunks are read or generated on a background thread and handed over to the main thread by update(), and chunks
+ * paged out are handed to the same thread to be saved, so paging never holds up a frame.
+ */
 public class MapResources {
 	private static MapResources instance;
-	
+
 	public static MapResources getInstance() {
 		if (instance == null) {
 			instance = new MapResources();
 		}
 		return instance;
 	}
-	
-	private TiledMap map;
-	
+
+	public static final int BACKGROUND_LAYER = 0;
+	public static final int WALL_LAYER = 1; // The layer that is collided with and dug into
+	public static final int FOREGROUND_LAYER = 2;
+	public static final int LAYERS = 3;
+
+	private static final Logger log = Logger.get(DigGame.LOG);
+
+	public static final long DEFAULT_SEED = 20130901L;
+	public static final int SURFACE_HEIGHT = 2; // First row of air above the ground of level1.tmx
+	// No generated hill reaches this high, everything above is open sky unless something was built there
+	public static final int SKY_HEIGHT = SURFACE_HEIGHT + ProceduralChunkGenerator.HILL_HEIGHT;
+	public static final String SAVE_DIRECTORY = "data/world";
+
+	private TiledMap map; // Hand made starting area, also holds the tile set
+	private ChunkGenerator generator;
+	private long seed;
+	private File saveDirectory;
+
+	// Chunks being read or generated in the background, they are only touched by the loader until they are finished
+	private ThreadPoolExecutor loader;
+	private LinkedBlockingQueue<Runnable> loaderTasks; // Loads and saves the loader hasn't started yet
+	private final LongMap<Chunk> pendingChunks; // Chunk.key(x, y), Chunk
+	private final LinkedBlockingQueue<Chunk> finishedChunks;
+	private final LinkedBlockingQueue<Chunk> savedChunks; // Unloaded chunks the loader has written, back to the pool
+
+	private final LongMap<Chunk> chunks; // Chunk.key(x, y), Chunk
+	private final Array<Chunk> loadedChunks; // Same chunks as above, for iterating without an iterator
+	private final Pool<Chunk> chunkPool;
+	private final Array<Chunk> dirtyChunks; // Chunks edited since the last flushEdits()
+	private final Array<MapListener> listeners;
+
+	// Number of chunks kept loaded past the edges of the camera's view, chunks are unloaded one chunk further
+	// out than they are loaded so walking back and forth over a chunk border doesn't thrash the disk
+	private int viewDistance = 1;
+
+	private MapResources() {
+		chunks = new LongMap<Chunk>();
+		loadedChunks = new Array<Chunk>(false, 16);
+		dirtyChunks = new Array<Chunk>(false, 16);
+		listeners = new Array<MapListener>();
+		pendingChunks = new LongMap<Chunk>();
+		finishedChunks = new LinkedBlockingQueue<Chunk>();
+		savedChunks = new LinkedBlockingQueue<Chunk>();
+		chunkPool = new Pool<Chunk>() {
+			@Override
+			protected Chunk newObject() {
+				return new Chunk(LAYERS);
+			}
+		};
+	}
+
 	public void create() {
+		create(DEFAULT_SEED);
+	}
+
+	/**
+	 * @param seed Seed of the generated terrain, the same seed always gives the same world
+	 */
+	public void create(long seed) {
+		create(seed, new File(SAVE_DIRECTORY));
+	}
+
+	/**
+	 * @param seed Seed of the generated terrain, the same seed always gives the same world
+	 * @param saveDirectory Where edited chunks are saved and loaded from, null for a fresh world that isn't saved
+	 */
+	public void create(long seed, File saveDirectory) {
+		// the map is only used as the starting area and for its tile set, the rest of the world is generated
+		map = Assets.getInstance().acquire(Assets.LEVEL_MAP, TiledMap.class);
+		create(seed, createGenerator(map, seed), saveDirectory);
+	}
+
+	/**
+	 * @param map The hand made starting area, may come from HeadlessTmxLoader when there's no GL context
+	 * @return The generator create(seed) builds the world with
+	 */
+	public static ChunkGenerator createGenerator(TiledMap map, long seed) {
+		TiledMapTileLayer walls = (TiledMapTileLayer) map.getLayers().get(WALL_LAYER);
+		ProceduralChunkGenerator terrain = new ProceduralChunkGenerator(seed, SURFACE_HEIGHT);
+		terrain.setFlat(0, walls.getWidth());
+		return new TiledMapChunkGenerator(map, terrain);
+	}
+
+	/**
+	 * Sets up the world from any generator, without going through Assets, for headless tools
+	 * @param seed Seed the generator was made with
+	 * @param generator Makes the chunks that haven't been saved
+	 * @param saveDirectory Where edited chunks are saved and loaded from, null to never touch the disk
+	 */
+	public void create(long seed, ChunkGenerator generator, File saveDirectory) {
+		this.seed = seed;
+		this.generator = generator;
+		this.saveDirectory = saveDirectory;
+
+		// one thread running its tasks in order, so loading a chunk again always waits for it to be saved
+		loaderTasks = new LinkedBlockingQueue<Runnable>();
+		loader = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, loaderTasks, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "chunk-loader");
+				// a chunk half way through generating isn't worth keeping the game open for
+				thread.setDaemon(true);
+				thread.setPriority(Thread.NORM_PRIORITY - 1);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Takes in the chunks finished in the background, unloads the ones too far out of the camera's view and starts
+	 * loading the ones around it. Never waits for a chunk, chunks show up in a later update once they are done
+	 * @param camera Camera used to render the world, in tile units
+	 */
+	public void update(OrthographicCamera camera) {
+		float halfWidth = camera.viewportWidth * camera.zoom / 2;
+		float halfHeight = camera.viewportHeight * camera.zoom / 2;
+		update(camera.position.x - halfWidth, camera.position.y - halfHeight, camera.position.x + halfWidth,
+				camera.position.y + halfHeight);
+	}
+
+	/**
+	 * Same as update(OrthographicCamera) for a view given in world tiles
+	 */
+	public void update(float x1, float y1, float x2, float y2) {
+		int minX = Chunk.toChunk((int) Math.floor(x1));
+		int maxX = Chunk.toChunk((int) Math.floor(x2));
+		int minY = Chunk.toChunk((int) Math.floor(y1));
+		int maxY = Chunk.toChunk((int) Math.floor(y2));
+		int unloadDistance = viewDistance + 1;
+
+		Chunk saved;
+		while ((saved = savedChunks.poll()) != null) {
+			chunkPool.free(saved);
+		}
+
+		Chunk finished;
+		while ((finished = finishedChunks.poll()) != null) {
+			pendingChunks.remove(Chunk.key(finished.getChunkX(), finished.getChunkY()));
+			if (finished.getChunkX() < minX - unloadDistance || finished.getChunkX() > maxX + unloadDistance
+					|| finished.getChunkY() < minY - unloadDistance || finished.getChunkY() > maxY + unloadDistance) {
+				// the camera moved on while it was loading, nothing was changed so there is nothing to save
+				chunkPool.free(finished);
+			} else {
+				addChunk(finished);
+			}
+		}
+
+		// unload first so the pool can hand the chunks straight back out
+		for (int i = loadedChunks.size - 1; i >= 0; i--) {
+			Chunk chunk = loadedChunks.get(i);
+			if (chunk.getChunkX() < minX - unloadDistance || chunk.getChunkX() > maxX + unloadDistance
+					|| chunk.getChunkY() < minY - unloadDistance || chunk.getChunkY() > maxY + unloadDistance) {
+				unloadChunk(i);
+			}
+		}
+
+		for (int y = minY - viewDistance; y <= maxY + viewDistance; y++) {
+			for (int x = minX - viewDistance; x <= maxX + viewDistance; x++) {
+				long key = Chunk.key(x, y);
+				if (!chunks.containsKey(key) && !pendingChunks.containsKey(key)) {
+					loadChunk(x, y);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Blocks until every chunk that is being loaded has been added to the world, for starting up behind the
+	 * loading screen
+	 */
+	public void finishLoading() {
+		try {
+			while (pendingChunks.size > 0) {
+				Chunk chunk = finishedChunks.take();
+				pendingChunks.remove(Chunk.key(chunk.getChunkX(), chunk.getChunkY()));
+				addChunk(chunk);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Starts reading or generating a chunk on the loader thread
+	 */
+	private void loadChunk(final int chunkX, final int chunkY) {
+		// the pool isn't thread safe, so the chunk is taken out here and handed to the loader
+		final Chunk chunk = chunkPool.obtain();
+		chunk.reset(chunkX, chunkY);
+		pendingChunks.put(Chunk.key(chunkX, chunkY), chunk);
+		loader.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					fillChunk(chunk);
+				} catch (Throwable t) {
+					log.error("Could not load chunk " + chunkX + ", " + chunkY, t);
+					chunk.reset(chunkX, chunkY);
+				}
+				finishedChunks.add(chunk);
+			}
+		});
+	}
+
+	/**
+	 * Reads the chunk from disk or generates it, runs on the loader thread
+	 */
+	private void fillChunk(Chunk chunk) {
+		File file = saveDirectory != null ? getChunkFile(chunk.getChunkX(), chunk.getChunkY()) : null;
+		boolean loaded = false;
+		if (file != null && file.exists()) {
+			try {
+				readChunk(chunk, file);
+				loaded = true;
+			} catch (IOException e) {
+				log.error("Could not read chunk " + file.getName() + ", regenerating it", e);
+				chunk.reset(chunk.getChunkX(), chunk.getChunkY());
+			}
+		}
+		if (!loaded) {
+			generator.generate(chunk);
+		}
+		chunk.clearDirty();
+	}
+
+	private void addChunk(Chunk chunk) {
+		chunks.put(Chunk.key(chunk.getChunkX(), chunk.getChunkY()), chunk);
+		loadedChunks.add(chunk);
+		for (int i = 0; i < listeners.size; i++) {
+			listeners.get(i).chunkLoaded(chunk);
+		}
+	}
+
+	private void unloadChunk(int index) {
+		Chunk chunk = loadedChunks.get(index);
+		for (int i = 0; i < listeners.size; i++) {
+			listeners.get(i).chunkUnloaded(chunk);
+		}
+		loadedChunks.removeIndex(index);
+		chunks.remove(Chunk.key(chunk.getChunkX(), chunk.getChunkY()));
+		if (chunk.queuedDirty) {
+			dirtyChunks.removeValue(chunk, true);
+		}
+		if (chunk.isModified() && saveDirectory != null) {
+			// nothing touches the chunk once it is out of the world, so the loader writes it as it is
+			loader.execute(new SaveTask(chunk));
+		} else {
+			chunkPool.free(chunk);
+		}
+	}
+
+	/**
+	 * Saves an unloaded chunk on the loader thread and hands it back to be freed
+	 */
+	private class SaveTask implements Runnable {
+		private final Chunk chunk;
+
+		SaveTask(Chunk chunk) {
+			this.chunk = chunk;
+		}
+
+		@Override
+		public void run() {
+			saveChunk(chunk);
+			savedChunks.add(chunk);
+		}
+	}
+
+	/**
+	 * Writes the chunk to disk if it has been changed since it was loaded
+	 */
+	private void saveChunk(Chunk chunk) {
+		if (!chunk.isModified() || saveDirectory == null) {
+			return;
+		}
+		File file = getChunkFile(chunk.getChunkX(), chunk.getChunkY());
+		try {
+			writeChunk(chunk, file);
+			chunk.setModified(false);
+		} catch (IOException e) {
+			log.error("Could not save chunk " + file.getName(), e);
+		}
+	}
+
+	/**
+	 * Saves all loaded chunks that have been changed
+	 */
+	public void saveAll() {
+		for (int i = 0; i < loadedChunks.size; i++) {
+			saveChunk(loadedChunks.get(i));
+		}
+	}
+
+	private File getChunkFile(int chunkX, int chunkY) {
+		return new File(saveDirectory, chunkX + "_" + chunkY + ".chunk");
 	}
-	
+
+	private static void readChunk(Chunk chunk, File file) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(new FileInputStream(file))));
+		try {
+			chunk.read(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	private void writeChunk(Chunk chunk, File file) throws IOException {
+		if (!saveDirectory.exists() && !saveDirectory.mkdirs()) {
+			throw new IOException("Could not create " + saveDirectory);
+		}
+		// write next to the real file and swap it in so a crash mid save doesn't lose the chunk
+		File temp = new File(saveDirectory, file.getName() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(new FileOutputStream(temp))));
+		try {
+			chunk.write(out);
+		} finally {
+			out.close();
+		}
+		if (file.exists() && !file.delete()) {
+			throw new IOException("Could not replace " + file);
+		}
+		if (!temp.renameTo(file)) {
+			throw new IOException("Could not rename " + temp + " to " + file);
+		}
+	}
+
+	/**
+	 * @return The chunk at the given chunk coordinates, or null if it isn't loaded
+	 */
+	public Chunk getChunk(int chunkX, int chunkY) {
+		return chunks.get(Chunk.key(chunkX, chunkY));
+	}
+
+	/**
+	 * @return All currently loaded chunks, do not modify
+	 */
+	public Array<Chunk> getLoadedChunks() {
+		return loadedChunks;
+	}
+
+	/**
+	 * @return Id of the tile at world tile x, y or 0 if it is empty or not loaded
+	 */
+	public int getTile(int layer, int x, int y) {
+		Chunk chunk = getChunk(Chunk.toChunk(x), Chunk.toChunk(y));
+		if (chunk == null) {
+			return 0;
+		}
+		return chunk.getTile(layer, x & Chunk.MASK, y & Chunk.MASK);
+	}
+
+	/**
+	 * @return Whether the tile at world tile x, y blocks movement, tiles that aren't loaded don't
+	 */
+	public boolean isSolid(int x, int y) {
+		Chunk chunk = getChunk(Chunk.toChunk(x), Chunk.toChunk(y));
+		return chunk != null && chunk.isSolid(x & Chunk.MASK, y & Chunk.MASK);
+	}
+
+	/**
+	 * Sets the tile at world tile x, y, does nothing if the chunk isn't loaded
+	 * @param id Tile id, 0 to clear the tile
+	 * @return Whether the tile changed
+	 */
+	public boolean setTile(int layer, int x, int y, int id) {
+		Chunk chunk = getChunk(Chunk.toChunk(x), Chunk.toChunk(y));
+		if (chunk != null && chunk.setTile(layer, x & Chunk.MASK, y & Chunk.MASK, id)) {
+			markDirty(chunk);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Digs out the wall tile at x, y whatever its hardness
+	 * @return Id of the tile that was dug out, 0 if there was nothing to dig
+	 */
+	public int dig(int x, int y) {
+		int id = getTile(WALL_LAYER, x, y);
+		if (id != 0) {
+			setTile(WALL_LAYER, x, y, 0);
+			for (int i = 0; i < listeners.size; i++) {
+				listeners.get(i).tileDug(x, y, id);
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * Hits the wall tile at x, y once, taking one off its hardness and digging it out when none is left
+	 * @return Id of the tile if this hit dug it out, 0 if it is still there or there was nothing to hit
+	 */
+	public int hit(int x, int y) {
+		Chunk chunk = getChunk(Chunk.toChunk(x), Chunk.toChunk(y));
+		if (chunk == null) {
+			return 0;
+		}
+		int localX = x & Chunk.MASK, localY = y & Chunk.MASK;
+		int cell = chunk.getCell(WALL_LAYER, localX, localY);
+		if (Tiles.id(cell) == 0) {
+			return 0;
+		}
+		int hardness = Tiles.hardness(cell);
+		if (hardness > 1) {
+			// not a visible change, the chunk only has to be saved
+			chunk.setCell(WALL_LAYER, localX, localY, Tiles.withHardness(cell, hardness - 1));
+			return 0;
+		}
+		return dig(x, y);
+	}
+
+	/**
+	 * Places a wall tile at x, y if the spot is empty
+	 * @return Whether the tile was placed
+	 */
+	public boolean place(int x, int y, int id) {
+		if (getTile(WALL_LAYER, x, y) != 0) {
+			return false;
+		}
+		return setTile(WALL_LAYER, x, y, id);
+	}
+
+	/**
+	 * Sets every tile in the rectangle (x1, y1) - (x2, y2), inclusive, one chunk at a time. Tiles in chunks that
+	 * aren't loaded are skipped
+	 * @param id Tile id, 0 to clear the tiles
+	 * @return Number of tiles that changed
+	 */
+	public int fill(int layer, int x1, int y1, int x2, int y2, int id) {
+		int minX = Math.min(x1, x2), maxX = Math.max(x1, x2);
+		int minY = Math.min(y1, y2), maxY = Math.max(y1, y2);
+		int changed = 0;
+		for (int chunkY = Chunk.toChunk(minY); chunkY <= Chunk.toChunk(maxY); chunkY++) {
+			for (int chunkX = Chunk.toChunk(minX); chunkX <= Chunk.toChunk(maxX); chunkX++) {
+				Chunk chunk = getChunk(chunkX, chunkY);
+				if (chunk == null) {
+					continue;
+				}
+				// the part of the rectangle inside this chunk
+				int startX = Math.max(minX - chunk.getTileX(), 0), endX = Math.min(maxX - chunk.getTileX(), Chunk.MASK);
+				int startY = Math.max(minY - chunk.getTileY(), 0), endY = Math.min(maxY - chunk.getTileY(), Chunk.MASK);
+				int chunkChanged = 0;
+				for (int y = startY; y <= endY; y++) {
+					for (int x = startX; x <= endX; x++) {
+						if (chunk.setTile(layer, x, y, id)) {
+							chunkChanged++;
+						}
+					}
+				}
+				if (chunkChanged > 0) {
+					markDirty(chunk);
+					changed += chunkChanged;
+				}
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Digs out every wall tile within radius of the center, for explosions
+	 * @return Number of tiles dug out
+	 */
+	public int digCircle(float centerX, float centerY, float radius) {
+		int minX = (int) Math.floor(centerX - radius), maxX = (int) Math.floor(centerX + radius);
+		int minY = (int) Math.floor(centerY - radius), maxY = (int) Math.floor(centerY + radius);
+		float radius2 = radius * radius;
+		int changed = 0;
+		for (int y = minY; y <= maxY; y++) {
+			// only the chunk lookups per tile, dirty bookkeeping is once per chunk in markDirty
+			float dy = y + 0.5f - centerY;
+			for (int x = minX; x <= maxX; x++) {
+				float dx = x + 0.5f - centerX;
+				if (dx * dx + dy * dy <= radius2 && dig(x, y) != 0) {
+					changed++;
+				}
+			}
+		}
+		return changed;
+	}
+
+	private void markDirty(Chunk chunk) {
+		if (!chunk.queuedDirty) {
+			chunk.queuedDirty = true;
+			dirtyChunks.add(chunk);
+		}
+	}
+
+	/**
+	 * Tells the listeners which part of each chunk changed since the last flush and clears the dirty regions.
+	 * Call once per tick, after everything that edits the world has run
+	 */
+	public void flushEdits() {
+		for (int i = 0; i < dirtyChunks.size; i++) {
+			Chunk chunk = dirtyChunks.get(i);
+			int x = chunk.getTileX(), y = chunk.getTileY();
+			for (int j = 0; j < listeners.size; j++) {
+				listeners.get(j).tilesChanged(chunk, x + chunk.getDirtyMinX(), y + chunk.getDirtyMinY(),
+						x + chunk.getDirtyMaxX(), y + chunk.getDirtyMaxY());
+			}
+			chunk.clearDirty();
+			chunk.queuedDirty = false;
+		}
+		dirtyChunks.clear();
+	}
+
+	public void addListener(MapListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(MapListener listener) {
+		listeners.removeValue(listener, true);
+	}
+
+	/**
+	 * @return Seed the terrain was generated from
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @return Number of chunks being loaded in the background
+	 */
+	public int getPendingCount() {
+		return pendingChunks.size;
+	}
+
+	/**
+	 * @return The hand made starting map, null if the world was created without it
+	 */
+	public TiledMap getMap() {
+		return map;
+	}
+
+	public TiledMapTileSets getTileSets() {
+		return map.getTileSets();
+	}
+
+	public int getViewDistance() {
+		return viewDistance;
+	}
+
+	public void setViewDistance(int viewDistance) {
+		this.viewDistance = viewDistance;
+	}
+
 	public void dispose() {
+		// loads that never started can go, unloaded chunks still have to be saved, here once the loader is done
+		List<Runnable> waiting = new ArrayList<Runnable>();
+		loaderTasks.drainTo(waiting);
+		loader.shutdown();
+		// a chunk that is being read or written has to finish before its file could be written over
+		boolean interrupted = false;
+		while (true) {
+			try {
+				if (loader.awaitTermination(1, TimeUnit.SECONDS)) {
+					break;
+				}
+				log.info("Waiting for the chunk loader to finish");
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		for (int i = 0; i < waiting.size(); i++) {
+			if (waiting.get(i) instanceof SaveTask) {
+				waiting.get(i).run();
+			}
+		}
+		savedChunks.clear();
+		saveAll();
 		MapResources.instance = null;
-		map.dispose();
+		if (map != null) {
+			Assets.getInstance().release(Assets.LEVEL_MAP);
+		}
 	}
 }
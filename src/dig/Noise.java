@@ -0,0 +1,80 @@
+package dig;
+
+/**
+ * Seeded value noise. Every value is a pure function of the seed and the coordinates, there is no internal state,
+ * so the same seed always gives the same world no matter in which order or on which thread chunks are generated.
+ */
+public class Noise {
+	private final long seed;
+
+	public Noise(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * @return A new Noise whose values are unrelated to this one's, for giving each feature its own noise
+	 */
+	public Noise derive(int salt) {
+		return new Noise(mix(seed + salt * 0x9E3779B97F4A7C15L));
+	}
+
+	/**
+	 * @return Random value in [0, 1) for the lattice point x, y
+	 */
+	public float random(int x, int y) {
+		long h = mix(seed ^ (x * 0x632BE59BD9B4E019L) ^ (y * 0x85157AF5L));
+		return (h >>> 40) / (float) (1L << 24);
+	}
+
+	/**
+	 * @return Smoothly interpolated noise in [-1, 1], features are about 1 unit apart
+	 */
+	public float value(float x, float y) {
+		int x0 = (int) Math.floor(x);
+		int y0 = (int) Math.floor(y);
+		float fx = smooth(x - x0);
+		float fy = smooth(y - y0);
+		float bottom = lerp(random(x0, y0), random(x0 + 1, y0), fx);
+		float top = lerp(random(x0, y0 + 1), random(x0 + 1, y0 + 1), fx);
+		return lerp(bottom, top, fy) * 2 - 1;
+	}
+
+	/**
+	 * Adds up octaves of value noise, each twice the frequency and half the strength of the one before
+	 * @return Noise in [-1, 1]
+	 */
+	public float fractal(float x, float y, int octaves) {
+		float sum = 0;
+		float amplitude = 1;
+		float total = 0;
+		for (int i = 0; i < octaves; i++) {
+			// offset every octave so their lattice points don't line up at 0, 0
+			sum += value(x + i * 17.31f, y + i * 41.17f) * amplitude;
+			total += amplitude;
+			x *= 2;
+			y *= 2;
+			amplitude /= 2;
+		}
+		return sum / total;
+	}
+
+	private static float smooth(float t) {
+		return t * t * (3 - 2 * t);
+	}
+
+	private static float lerp(float a, float b, float t) {
+		return a + (b - a) * t;
+	}
+
+	/**
+	 * Scrambles the bits of a long, finalizer of MurmurHash3
+	 */
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
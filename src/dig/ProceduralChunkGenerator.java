@@ -0,0 +1,131 @@
+package dig;
+
+/**
+ * Generates endless terrain from a seed: rolling hills of dirt over stone, worm and pocket caves and ore veins
+ * that get richer the deeper they are. Patches of sand and gravel and flooded pockets deep down are left as they are
+ * generated until something digs near them, see TerrainPhysics. Every tile only depends on the seed and its
+ * position, so chunks can be generated in any order, on any thread, and the same seed always gives the same chunk.
+ */
+public class ProceduralChunkGenerator implements ChunkGenerator {
+	// Tile ids in tileSet.png. Falling and flowing tiles behave by id wherever they are, so they must be ids the
+	// Walls layer of level1.tmx doesn't use
+	public static final int SURFACE_TILE = 143;
+	public static final int DIRT_TILE = 142;
+	public static final int STONE_TILE = 127;
+	public static final int ORE_TILE = 128;
+	public static final int SAND_TILE = 61;
+	public static final int GRAVEL_TILE = 225;
+	// Water a level deep, up to WATER_TILE + WATER_LEVELS - 1 for a full tile. Blank in tileSet.png, the
+	// ChunkRenderer draws these itself
+	public static final int WATER_TILE = 241;
+	public static final int WATER_LEVELS = 8;
+
+	public static final int HILL_HEIGHT = 24; // How far the surface goes above and below surfaceHeight
+	private static final int BLEND_WIDTH = 32; // Tiles over which hills flatten out towards the flat area
+	private static final int CAVE_DEPTH = 6; // Caves don't break through the top tiles of the ground
+	private static final int WATER_DEPTH = 40; // Pocket caves deeper than this are flooded
+
+	private final Noise hills;
+	private final Noise dirt;
+	private final Noise worms;
+	private final Noise pockets;
+	private final Noise ore;
+	private final Noise loose;
+	private final int surfaceHeight;
+	private int flatStart, flatEnd; // Columns where the surface stays at surfaceHeight, for hand made areas
+
+	/**
+	 * @param seed Seed of the world
+	 * @param surfaceHeight Average y of the first row of air above the ground
+	 */
+	public ProceduralChunkGenerator(long seed, int surfaceHeight) {
+		Noise noise = new Noise(seed);
+		hills = noise.derive(1);
+		dirt = noise.derive(2);
+		worms = noise.derive(3);
+		pockets = noise.derive(4);
+		ore = noise.derive(5);
+		loose = noise.derive(6);
+		this.surfaceHeight = surfaceHeight;
+	}
+
+	/**
+	 * Keeps the surface flat at surfaceHeight between the columns startX (inclusive) and endX (exclusive)
+	 */
+	public void setFlat(int startX, int endX) {
+		flatStart = startX;
+		flatEnd = endX;
+	}
+
+	@Override
+	public void generate(Chunk chunk) {
+		int tileX = chunk.getTileX();
+		int tileY = chunk.getTileY();
+		for (int x = 0; x < Chunk.SIZE; x++) {
+			int worldX = tileX + x;
+			int surface = getSurfaceHeight(worldX);
+			if (surface <= tileY) {
+				// all air
+				continue;
+			}
+			int dirtDepth = 3 + (int) ((dirt.fractal(worldX / 24f, 0.5f, 2) + 1) * 3);
+			int top = Math.min(Chunk.SIZE, surface - tileY);
+			for (int y = 0; y < top; y++) {
+				int worldY = tileY + y;
+				int depth = surface - 1 - worldY;
+				int tile;
+				if (depth >= CAVE_DEPTH && isCave(worldX, worldY, depth)) {
+					if (depth < WATER_DEPTH || !isPocket(worldX, worldY)) {
+						continue;
+					}
+					tile = WATER_TILE + WATER_LEVELS - 1;
+				} else if (depth == 0) {
+					tile = SURFACE_TILE;
+				} else if (depth < dirtDepth) {
+					tile = isLoose(worldX, worldY) ? SAND_TILE : DIRT_TILE;
+				} else if (isOre(worldX, worldY, depth)) {
+					tile = ORE_TILE;
+				} else {
+					tile = isLoose(worldX, worldY) ? GRAVEL_TILE : STONE_TILE;
+				}
+				chunk.setTile(MapResources.WALL_LAYER, x, y, tile);
+			}
+		}
+		chunk.setModified(false);
+	}
+
+	/**
+	 * @return Y of the first row of air above the ground in column x
+	 */
+	public int getSurfaceHeight(int x) {
+		float blend = 1;
+		if (flatStart < flatEnd) {
+			int distance = x < flatStart ? flatStart - x : (x >= flatEnd ? x - flatEnd + 1 : 0);
+			blend = Math.min(distance, BLEND_WIDTH) / (float) BLEND_WIDTH;
+		}
+		return surfaceHeight + Math.round(hills.fractal(x / 96f, 0.5f, 4) * HILL_HEIGHT * blend);
+	}
+
+	private boolean isCave(int x, int y, int depth) {
+		// worms follow the thin band where the noise crosses 0, and get wider the deeper they are
+		float width = 0.04f + Math.min(depth, 200) * 0.0002f;
+		if (Math.abs(worms.fractal(x / 40f, y / 20f, 3)) < width) {
+			return true;
+		}
+		return isPocket(x, y);
+	}
+
+	private boolean isPocket(int x, int y) {
+		return pockets.fractal(x / 16f, y / 16f, 2) > 0.55f;
+	}
+
+	private boolean isLoose(int x, int y) {
+		return loose.fractal(x / 12f, y / 6f, 2) > 0.5f;
+	}
+
+	private boolean isOre(int x, int y, int depth) {
+		// stretched sideways so ore comes in veins rather than blobs
+		float threshold = 0.6f - Math.min(depth, 300) * 0.0005f;
+		return ore.fractal(x / 8f, y / 4f, 2) > threshold;
+	}
+}
@@ -0,0 +1,299 @@
+package dig;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import entities.AllocationCounter;
+
+/**
+ * Times the parts of every frame and keeps the last WINDOW frames, so frame time spikes can be seen and exported
+ * instead of being averaged away. Code is timed in sections:
+ *
+ * <pre>
+ * long start = Profiler.getInstance().start();
+ * ...
+ * Profiler.getInstance().stop(Profiler.COLLISION, start);
+ * </pre>
+ *
+ * A section can be timed any number of times per frame and from any thread, the times add up. Besides the sections
+ * each frame records its total time, garbage collections, bytes allocated on the main thread and a few counters set
+ * by the game. Nothing allocates per frame.
+ */
+public class Profiler {
+	private static Profiler instance;
+
+	public static Profiler getInstance() {
+		if (instance == null) {
+			instance = new Profiler();
+		}
+		return instance;
+	}
+
+	// Sections
+	public static final int INPUT = 0;
+	public static final int ENTITY_UPDATE = 1;
+	public static final int COLLISION = 2; // Inside ENTITY_UPDATE, summed over all threads
+	public static final int WORLD_UPDATE = 3; // Chunk paging
+	public static final int MAP_RENDER = 4;
+	public static final int ENTITY_RENDER = 5;
+	public static final int LIGHTING = 6; // Light flood fills, inside whichever section changed the world
+	public static final int TERRAIN = 7; // Falling sand and flowing water
+	public static final int LIGHT_RENDER = 8; // Darkening the screen by the light maps
+	public static final int SECTIONS = 9;
+	private static final String[] SECTION_NAMES = { "input", "entity update", "collision", "world update",
+			"map render", "entity render", "lighting", "terrain", "light render" };
+
+	// Counters, set by the game once per frame
+	public static final int ENTITIES = 0;
+	public static final int BODIES = 1;
+	public static final int RENDERED = 2; // Entitys drawn
+	public static final int DRAW_CALLS = 3;
+	public static final int CHUNKS = 4; // Loaded chunks
+	public static final int TICKS = 5; // Simulation ticks run this frame
+	public static final int PARTICLES = 6; // Particles alive
+	public static final int COUNTERS = 7;
+	private static final String[] COUNTER_NAMES = { "entities", "bodies", "rendered", "draw calls", "chunks",
+			"ticks", "particles" };
+
+	// Number of frames kept, 5 seconds at 60 fps
+	public static final int WINDOW = 300;
+
+	private boolean enabled = true;
+	private final AtomicLongArray sectionNanos; // Section, nanoseconds so far this frame
+	private final float[][] sectionTimes; // Section, frame, milliseconds
+	private final float[] frameTimes; // Frame, milliseconds
+	private final int[] collections; // Frame, garbage collections
+	private final long[] allocated; // Frame, bytes allocated on the main thread
+	private final int[][] counters; // Counter, frame, value
+	private final int[] currentCounters;
+	private int head; // Index the next frame is written to
+	private int count; // Frames recorded, up to WINDOW
+	private long frameNumber;
+	private long lastFrame; // nanoTime at the end of the last frame
+
+	private final GarbageCollectorMXBean[] collectors;
+	private long lastCollections;
+	private final AllocationCounter allocations;
+
+	private final float[] sorted; // Scratch space for percentiles
+
+	private Profiler() {
+		sectionNanos = new AtomicLongArray(SECTIONS);
+		sectionTimes = new float[SECTIONS][WINDOW];
+		frameTimes = new float[WINDOW];
+		collections = new int[WINDOW];
+		allocated = new long[WINDOW];
+		counters = new int[COUNTERS][WINDOW];
+		currentCounters = new int[COUNTERS];
+		sorted = new float[WINDOW];
+
+		List<GarbageCollectorMXBean> beans = ManagementFactory.getGarbageCollectorMXBeans();
+		collectors = beans.toArray(new GarbageCollectorMXBean[beans.size()]);
+		lastCollections = countCollections();
+		allocations = new AllocationCounter();
+		allocations.setEnabled(true);
+		allocations.begin();
+	}
+
+	/**
+	 * @return Start time of a section, pass it to stop()
+	 */
+	public long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Adds the time since start to a section
+	 * @param section One of the section constants
+	 * @param start What start() returned
+	 */
+	public void stop(int section, long start) {
+		if (start != 0) {
+			sectionNanos.addAndGet(section, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Sets a counter for the current frame
+	 * @param counter One of the counter constants
+	 */
+	public void setCounter(int counter, int value) {
+		currentCounters[counter] = value;
+	}
+
+	/**
+	 * Ends the current frame and records it, call once at the end of every frame on the main thread
+	 */
+	public void frame() {
+		long now = System.nanoTime();
+		if (!enabled) {
+			lastFrame = now;
+			return;
+		}
+		allocations.end();
+		allocations.frame();
+
+		frameTimes[head] = lastFrame == 0 ? 0 : (now - lastFrame) / 1000000f;
+		for (int section = 0; section < SECTIONS; section++) {
+			sectionTimes[section][head] = sectionNanos.getAndSet(section, 0) / 1000000f;
+		}
+		long totalCollections = countCollections();
+		collections[head] = (int) (totalCollections - lastCollections);
+		lastCollections = totalCollections;
+		allocated[head] = allocations.getLastFrameBytes();
+		for (int counter = 0; counter < COUNTERS; counter++) {
+			counters[counter][head] = currentCounters[counter];
+		}
+
+		head = (head + 1) % WINDOW;
+		count = Math.min(count + 1, WINDOW);
+		frameNumber++;
+		lastFrame = now;
+		allocations.begin();
+	}
+
+	private long countCollections() {
+		long total = 0;
+		for (int i = 0; i < collectors.length; i++) {
+			// -1 if the collector doesn't count
+			total += Math.max(0, collectors[i].getCollectionCount());
+		}
+		return total;
+	}
+
+	/**
+	 * @return Index into the history of a recorded frame, 0 is the oldest frame still kept
+	 */
+	private int index(int frame) {
+		return (head - count + frame + WINDOW) % WINDOW;
+	}
+
+	/**
+	 * @param p From 0 to 1, 0.5 for the median
+	 * @return The p'th percentile of the frame times kept, in milliseconds
+	 */
+	public float getFrameTimePercentile(float p) {
+		return percentile(frameTimes, p);
+	}
+
+	/**
+	 * @return The p'th percentile of a section's times kept, in milliseconds
+	 */
+	public float getSectionPercentile(int section, float p) {
+		return percentile(sectionTimes[section], p);
+	}
+
+	private float percentile(float[] values, float p) {
+		if (count == 0) {
+			return 0;
+		}
+		for (int i = 0; i < count; i++) {
+			sorted[i] = values[index(i)];
+		}
+		Arrays.sort(sorted, 0, count);
+		return sorted[Math.min(count - 1, (int) (p * count))];
+	}
+
+	/**
+	 * @return Time of the frame age frames ago in milliseconds, 0 is the last recorded frame
+	 */
+	public float getFrameTime(int age) {
+		return age < count ? frameTimes[index(count - 1 - age)] : 0;
+	}
+
+	/**
+	 * @return Time the section took in the last recorded frame, in milliseconds
+	 */
+	public float getSectionTime(int section) {
+		return count > 0 ? sectionTimes[section][index(count - 1)] : 0;
+	}
+
+	/**
+	 * @return Value of the counter in the last recorded frame
+	 */
+	public int getCounter(int counter) {
+		return count > 0 ? counters[counter][index(count - 1)] : 0;
+	}
+
+	/**
+	 * @return Garbage collections during the frames kept
+	 */
+	public int getCollections() {
+		int total = 0;
+		for (int i = 0; i < count; i++) {
+			total += collections[i];
+		}
+		return total;
+	}
+
+	/**
+	 * @return Bytes the main thread allocated during the last recorded frame
+	 */
+	public long getAllocatedBytes() {
+		return count > 0 ? allocated[index(count - 1)] : 0;
+	}
+
+	/**
+	 * @return Number of frames kept, up to WINDOW
+	 */
+	public int getFrameCount() {
+		return count;
+	}
+
+	public static String getSectionName(int section) {
+		return SECTION_NAMES[section];
+	}
+
+	public static String getCounterName(int counter) {
+		return COUNTER_NAMES[counter];
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Writes the frames kept as CSV, one row per frame, oldest first
+	 */
+	public void exportCsv(File file) throws IOException {
+		Writer out = new BufferedWriter(new FileWriter(file));
+		try {
+			out.write("frame,frame ms");
+			for (int section = 0; section < SECTIONS; section++) {
+				out.write("," + SECTION_NAMES[section] + " ms");
+			}
+			out.write(",gc,allocated bytes");
+			for (int counter = 0; counter < COUNTERS; counter++) {
+				out.write("," + COUNTER_NAMES[counter]);
+			}
+			out.write("\n");
+			for (int frame = 0; frame < count; frame++) {
+				int i = index(frame);
+				StringBuilder row = new StringBuilder();
+				row.append(frameNumber - count + frame).append(',').append(frameTimes[i]);
+				for (int section = 0; section < SECTIONS; section++) {
+					row.append(',').append(sectionTimes[section][i]);
+				}
+				row.append(',').append(collections[i]).append(',').append(allocated[i]);
+				for (int counter = 0; counter < COUNTERS; counter++) {
+					row.append(',').append(counters[counter][i]);
+				}
+				out.write(row.append('\n').toString());
+			}
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package dig;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL10;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
+import com.badlogic.gdx.graphics.glutils.ShapeRenderer.ShapeType;
+
+/**
+ * Draws what the Profiler recorded over the game: a graph of the last frame times, so single slow frames stand out,
+ * and the percentiles, section times and counters as text. The text is only rebuilt a few times a second.
+ */
+public class ProfilerOverlay {
+	private static final float TEXT_INTERVAL = 0.25f; // Seconds between text updates
+	private static final float TARGET_MILLIS = 1000f / DigGame.DEFAULT_TICK_RATE; // Frame time the graph marks
+	private static final float GRAPH_HEIGHT = 80; // Pixels for twice the target frame time
+
+	private final Profiler profiler;
+	private final SpriteBatch batch;
+	private final BitmapFont font;
+	private final ShapeRenderer shapes;
+	private final StringBuilder text;
+	private float textAge = TEXT_INTERVAL;
+	private boolean visible;
+
+	public ProfilerOverlay(Profiler profiler) {
+		this.profiler = profiler;
+		batch = new SpriteBatch();
+		font = new BitmapFont(); // libgdx's built in Arial
+		shapes = new ShapeRenderer();
+		text = new StringBuilder(512);
+	}
+
+	public boolean isVisible() {
+		return visible;
+	}
+
+	public void setVisible(boolean visible) {
+		this.visible = visible;
+	}
+
+	public void render(float deltaTime) {
+		if (!visible) {
+			return;
+		}
+		int width = Gdx.graphics.getWidth();
+		int height = Gdx.graphics.getHeight();
+		batch.getProjectionMatrix().setToOrtho2D(0, 0, width, height);
+		shapes.getProjectionMatrix().setToOrtho2D(0, 0, width, height);
+		renderGraph(width);
+
+		textAge += deltaTime;
+		if (textAge >= TEXT_INTERVAL) {
+			textAge = 0;
+			updateText();
+		}
+		batch.begin();
+		font.drawMultiLine(batch, text, 8, height - 8);
+		batch.end();
+	}
+
+	/**
+	 * One bar per frame along the bottom of the screen, newest on the right, red when over the target frame time
+	 */
+	private void renderGraph(int width) {
+		int frames = Math.min(profiler.getFrameCount(), width / 2);
+		float scale = GRAPH_HEIGHT / (TARGET_MILLIS * 2);
+		Gdx.gl.glEnable(GL10.GL_BLEND);
+		shapes.begin(ShapeType.Filled);
+		shapes.setColor(0, 0, 0, 0.5f);
+		shapes.rect(0, 0, width, GRAPH_HEIGHT);
+		for (int age = 0; age < frames; age++) {
+			float millis = profiler.getFrameTime(age);
+			if (millis > TARGET_MILLIS) {
+				shapes.setColor(1, 0.2f, 0.2f, 1);
+			} else {
+				shapes.setColor(0.3f, 1, 0.3f, 1);
+			}
+			shapes.rect(width - (age + 1) * 2, 0, 2, Math.min(millis * scale, GRAPH_HEIGHT));
+		}
+		// target frame time
+		shapes.setColor(1, 1, 1, 1);
+		shapes.rect(0, TARGET_MILLIS * scale, width, 1);
+		shapes.end();
+		Gdx.gl.glDisable(GL10.GL_BLEND);
+	}
+
+	private void updateText() {
+		text.setLength(0);
+		text.append("fps ").append(Gdx.graphics.getFramesPerSecond());
+		text.append("  frame p50 ").append(round(profiler.getFrameTimePercentile(0.5f)));
+		text.append(" ms  p99 ").append(round(profiler.getFrameTimePercentile(0.99f)));
+		text.append(" ms  max ").append(round(profiler.getFrameTimePercentile(1f))).append(" ms\n");
+		for (int section = 0; section < Profiler.SECTIONS; section++) {
+			text.append(Profiler.getSectionName(section));
+			text.append("  ").append(round(profiler.getSectionTime(section)));
+			text.append(" ms  p99 ").append(round(profiler.getSectionPercentile(section, 0.99f))).append(" ms\n");
+		}
+		text.append("gc ").append(profiler.getCollections()).append(" in ").append(profiler.getFrameCount());
+		text.append(" frames  allocated ").append(profiler.getAllocatedBytes() / 1024).append(" KB/frame\n");
+		for (int counter = 0; counter < Profiler.COUNTERS; counter++) {
+			text.append(Profiler.getCounterName(counter)).append(' ').append(profiler.getCounter(counter));
+			text.append(counter % 3 == 2 ? "\n" : "   ");
+		}
+	}
+
+	/**
+	 * @return Value rounded to 2 decimals
+	 */
+	private static float round(float value) {
+		return Math.round(value * 100) / 100f;
+	}
+
+	public void dispose() {
+		batch.dispose();
+		font.dispose();
+		shapes.dispose();
+	}
+}
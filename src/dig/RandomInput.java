@@ -0,0 +1,38 @@
+package dig;
+
+import java.util.Random;
+
+import entities.Action;
+import entities.InputSource;
+import entities.InputState;
+
+/**
+ * Plays like someone exploring without a plan: walks one way or the other for a while, stops now and then, and
+ * jumps (digging out whatever is overhead) at random. The same seed always presses the same keys, so a headless
+ * run can be repeated.
+ */
+public class RandomInput implements InputSource {
+	private static final int MIN_TICKS = 30; // Shortest time one set of keys is held
+	private static final int MAX_TICKS = 180; // Longest time one set of keys is held
+	private static final float JUMP_CHANCE = 0.05f; // Chance of jumping on any tick
+
+	private final Random random;
+	private int ticksLeft;
+	private int walking; // Bits of the direction held
+
+	public RandomInput(long seed) {
+		random = new Random(seed);
+	}
+
+	@Override
+	public InputState poll() {
+		if (--ticksLeft <= 0) {
+			ticksLeft = MIN_TICKS + random.nextInt(MAX_TICKS - MIN_TICKS);
+			// mostly walking, sometimes standing still
+			int direction = random.nextInt(5);
+			walking = direction < 2 ? InputState.bit(Action.Left) : (direction < 4 ? InputState.bit(Action.Right) : 0);
+		}
+		int jump = random.nextFloat() < JUMP_CHANCE ? InputState.bit(Action.Jump) : 0;
+		return InputState.of(walking | jump);
+	}
+}
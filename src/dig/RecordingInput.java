@@ -0,0 +1,28 @@
+package dig;
+
+import entities.InputSource;
+import entities.InputState;
+
+/**
+ * Passes on what another InputSource polls and adds every snapshot to an InputRecording
+ */
+public class RecordingInput implements InputSource {
+	private final InputSource source;
+	private final InputRecording recording;
+
+	public RecordingInput(InputSource source, InputRecording recording) {
+		this.source = source;
+		this.recording = recording;
+	}
+
+	@Override
+	public InputState poll() {
+		InputState state = source.poll();
+		recording.add(state);
+		return state;
+	}
+
+	public InputRecording getRecording() {
+		return recording;
+	}
+}
@@ -0,0 +1,207 @@
+package dig;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.maps.tiled.TiledMap;
+
+import entities.EntityContainer;
+import entities.Hero;
+
+/**
+ * Plays an InputRecording back without a window and times every tick, so the same session can be replayed before
+ * and after a change and the tick times compared. The world is rebuilt from the recorded seed and level1.tmx and
+ * ticked the way DigGame ticks it, with the chunks around the Hero's view paged in every tick. Chunks are waited
+ * for instead of loading in the background, so the replay only differs from the session if the Hero ran into
+ * chunks the game hadn't loaded yet.
+ */
+public class Replay {
+	private static final Logger log = Logger.get("Replay");
+
+	// DigGame's camera, the chunks around it are kept loaded
+	private static final float VIEW_WIDTH = 30, VIEW_HEIGHT = 20;
+
+	private final InputRecording recording;
+	private final Profiler profiler;
+	private final EntityContainer container;
+	private MapResources world;
+	private TerrainPhysics terrain;
+	private Hero hero;
+	private ReplayInput input;
+	private float tickTime;
+
+	// per tick results
+	private final float[] tickMillis;
+	private final int[] entities;
+	private final int[] chunks;
+
+	public Replay(InputRecording recording) {
+		this.recording = recording;
+		profiler = Profiler.getInstance();
+		container = EntityContainer.getInstance();
+		tickMillis = new float[recording.size()];
+		entities = new int[recording.size()];
+		chunks = new int[recording.size()];
+	}
+
+	/**
+	 * Builds the recorded world, fresh and unsaved like DigGame builds it when recording, and spawns the Hero
+	 * @param map level1.tmx, from HeadlessTmxLoader
+	 */
+	public void create(TiledMap map) {
+		long seed = recording.getSeed();
+		world = MapResources.getInstance();
+		world.create(seed, MapResources.createGenerator(map, seed), null);
+		container.clear();
+		container.getBodies().setWorld(world);
+		terrain = new TerrainPhysics(world);
+		tickTime = 1f / recording.getTickRate();
+
+		hero = new Hero();
+		hero.setWidth(Simulation.HERO_WIDTH);
+		hero.setHeight(Simulation.HERO_HEIGHT);
+		hero.getPosition().set(recording.getSpawnX(), recording.getSpawnY());
+		container.add(hero);
+		input = new ReplayInput(recording);
+		updateWorld();
+	}
+
+	/**
+	 * Plays every recorded tick
+	 */
+	public void run() {
+		for (int tick = 0; tick < recording.size(); tick++) {
+			long start = System.nanoTime();
+			step();
+			tickMillis[tick] = (System.nanoTime() - start) / 1000000f;
+			entities[tick] = container.size();
+			chunks[tick] = world.getLoadedChunks().size;
+		}
+	}
+
+	/**
+	 * One tick, in the order DigGame.tick() and render() do it
+	 */
+	private void step() {
+		long start = profiler.start();
+		hero.setInput(input.poll());
+		profiler.stop(Profiler.INPUT, start);
+
+		start = profiler.start();
+		container.update(tickTime);
+		profiler.stop(Profiler.ENTITY_UPDATE, start);
+
+		start = profiler.start();
+		terrain.update();
+		profiler.stop(Profiler.TERRAIN, start);
+		world.flushEdits();
+
+		start = profiler.start();
+		updateWorld();
+		profiler.stop(Profiler.WORLD_UPDATE, start);
+		profiler.frame();
+	}
+
+	/**
+	 * Loads what DigGame's camera would see, the camera only follows the Hero sideways
+	 */
+	private void updateWorld() {
+		float x = hero.getPosition().x;
+		world.update(x - VIEW_WIDTH / 2, 0, x + VIEW_WIDTH / 2, VIEW_HEIGHT);
+		world.finishLoading();
+	}
+
+	/**
+	 * Logs the tick time percentiles, how many ticks went over their time budget and where the Hero ended up, which
+	 * is the same on every replay of a recording if the simulation is deterministic
+	 */
+	public void report() {
+		int ticks = tickMillis.length;
+		if (ticks == 0) {
+			log.info("The recording is empty");
+			return;
+		}
+		float[] sorted = Arrays.copyOf(tickMillis, ticks);
+		Arrays.sort(sorted);
+		float total = 0;
+		int over = 0;
+		for (int i = 0; i < ticks; i++) {
+			total += sorted[i];
+			if (sorted[i] > tickTime * 1000) {
+				over++;
+			}
+		}
+		log.info(ticks + " ticks in " + total / 1000 + " s, " + Math.round(ticks / (total / 1000)) + " ticks/s");
+		log.info("tick mean " + total / ticks + " ms, p50 " + percentile(sorted, 0.5f) + " ms, p90 "
+				+ percentile(sorted, 0.9f) + " ms, p99 " + percentile(sorted, 0.99f) + " ms, max " + sorted[ticks - 1]
+				+ " ms");
+		log.info(over + " ticks over the " + tickTime * 1000 + " ms budget");
+		log.info("Hero ended at " + hero.getPosition().x + ", " + hero.getPosition().y);
+	}
+
+	private static float percentile(float[] sorted, float p) {
+		return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))];
+	}
+
+	/**
+	 * Writes the time of every tick as CSV, with the entities and loaded chunks after the tick
+	 */
+	public void writeCsv(File file) throws IOException {
+		Writer out = new BufferedWriter(new FileWriter(file));
+		try {
+			out.write("tick,tick ms,entities,chunks\n");
+			for (int tick = 0; tick < tickMillis.length; tick++) {
+				out.write(tick + "," + tickMillis[tick] + "," + entities[tick] + "," + chunks[tick] + "\n");
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	public void dispose() {
+		container.clear();
+		container.getBodies().clear();
+		container.getBodies().setWorld(null);
+		terrain.dispose();
+		world.dispose();
+	}
+
+	/**
+	 * Replays the recording given as the first argument, -csv file also writes the time of every tick to file
+	 */
+	public static void main(String[] args) {
+		if (args.length != 1 && !(args.length == 3 && args[1].equals("-csv"))) {
+			System.out.println("Arguments: recording [-csv file]");
+			System.exit(1);
+		}
+		InputRecording recording;
+		TiledMap map;
+		try {
+			recording = InputRecording.read(new File(args[0]));
+			map = new HeadlessTmxLoader().parse(new FileHandle(new File(Assets.LEVEL_MAP)));
+		} catch (IOException e) {
+			log.error("Could not read " + args[0], e);
+			System.exit(1);
+			return;
+		}
+		log.info("Replaying " + recording.size() + " ticks with seed " + recording.getSeed());
+		Replay replay = new Replay(recording);
+		replay.create(map);
+		replay.run();
+		replay.report();
+		if (args.length == 3) {
+			try {
+				replay.writeCsv(new File(args[2]));
+				log.info("Wrote tick times to " + args[2]);
+			} catch (IOException e) {
+				log.error("Could not write tick times to " + args[2], e);
+			}
+		}
+		replay.dispose();
+	}
+}
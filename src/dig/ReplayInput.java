@@ -0,0 +1,35 @@
+package dig;
+
+import entities.InputSource;
+import entities.InputState;
+
+/**
+ * Plays an InputRecording back one tick per poll, nothing is held once the recording is over
+ */
+public class ReplayInput implements InputSource {
+	private final InputRecording recording;
+	private int tick;
+
+	public ReplayInput(InputRecording recording) {
+		this.recording = recording;
+	}
+
+	@Override
+	public InputState poll() {
+		if (tick >= recording.size()) {
+			return InputState.NONE;
+		}
+		return recording.get(tick++);
+	}
+
+	/**
+	 * @return Ticks played so far
+	 */
+	public int getTick() {
+		return tick;
+	}
+
+	public boolean isFinished() {
+		return tick >= recording.size();
+	}
+}
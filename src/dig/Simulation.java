@@ -0,0 +1,265 @@
+package dig;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import entities.ComponentStore;
+import entities.EntityContainer;
+import entities.Hero;
+import entities.InputSource;
+
+/**
+ * Runs the game without a window, GL or keyboard: Heroes driven by RandomInput wander and dig through a generated
+ * world, ticked back to back as fast as the machine allows. Every so often more Heroes and debris are added and the
+ * loaded area follows wherever the Heroes went, so the run reports how ticks per second hold up as the entity count
+ * and the world grow. Started with DigLauncher -headless, see usage() for the options.
+ */
+public class Simulation {
+	private static final Logger log = Logger.get("Simulation");
+
+	private static final float TICK_TIME = 1f / DigGame.DEFAULT_TICK_RATE;
+	// hero size in world units, same as EntityFactory works out from p1_stand
+	static final float HERO_WIDTH = 66 / 64f, HERO_HEIGHT = 92 / 64f;
+	private static final float DEBRIS_SIZE = 0.25f;
+	private static final int SPAWN_SPACING = 4; // Columns of the world per Hero, where new Heroes are dropped
+
+	private final long seed;
+	private final Random random;
+	private final Profiler profiler;
+	private final EntityContainer container;
+	private final List<Hero> heroes;
+	private final List<InputSource> inputs; // One per Hero, in the same order
+	private MapResources world;
+	private TerrainPhysics terrain;
+	private ProceduralChunkGenerator generator;
+	private long ticks;
+
+	public Simulation(long seed) {
+		this.seed = seed;
+		random = new Random(seed);
+		profiler = Profiler.getInstance();
+		container = EntityContainer.getInstance();
+		heroes = new ArrayList<Hero>();
+		inputs = new ArrayList<InputSource>();
+	}
+
+	/**
+	 * Generates the world around the spawn, with nothing saved to disk
+	 */
+	public void create() {
+		generator = new ProceduralChunkGenerator(seed, MapResources.SURFACE_HEIGHT);
+		world = MapResources.getInstance();
+		world.create(seed, generator, null);
+		container.clear();
+		container.getBodies().setWorld(world);
+		terrain = new TerrainPhysics(world);
+		updateWorld();
+	}
+
+	/**
+	 * Drops Heroes on the surface, spread over more of the world the more Heroes there are, and debris above them
+	 */
+	public void spawn(int heroCount, int debrisCount) {
+		for (int i = 0; i < heroCount; i++) {
+			int x = random.nextInt((heroes.size() + 1) * SPAWN_SPACING);
+			Hero hero = new Hero();
+			hero.setWidth(HERO_WIDTH);
+			hero.setHeight(HERO_HEIGHT);
+			hero.getPosition().set(x, generator.getSurfaceHeight(x) + 1);
+			heroes.add(hero);
+			inputs.add(new RandomInput(random.nextLong()));
+			container.add(hero);
+		}
+		ComponentStore bodies = container.getBodies();
+		for (int i = 0; i < debrisCount; i++) {
+			Hero above = heroes.get(random.nextInt(heroes.size()));
+			int body = bodies.add(above.getPosition().x + random.nextFloat() * 4 - 2, above.getPosition().y + 4,
+					DEBRIS_SIZE, DEBRIS_SIZE, null);
+			bodies.setVelocity(body, random.nextFloat() * 8 - 4, random.nextFloat() * 4);
+			bodies.setDamping(body, 0.98f);
+			bodies.setLife(body, 2 + random.nextFloat() * 8);
+		}
+		// the new Heroes need the ground under them before the next tick
+		updateWorld();
+	}
+
+	/**
+	 * Advances everything by one tick, the way DigGame does it
+	 */
+	public void step() {
+		long start = profiler.start();
+		for (int i = 0; i < heroes.size(); i++) {
+			heroes.get(i).setInput(inputs.get(i).poll());
+		}
+		profiler.stop(Profiler.INPUT, start);
+
+		start = profiler.start();
+		container.update(TICK_TIME);
+		profiler.stop(Profiler.ENTITY_UPDATE, start);
+
+		start = profiler.start();
+		terrain.update();
+		profiler.stop(Profiler.TERRAIN, start);
+		world.flushEdits();
+
+		start = profiler.start();
+		updateWorld();
+		profiler.stop(Profiler.WORLD_UPDATE, start);
+
+		profiler.setCounter(Profiler.ENTITIES, container.size());
+		profiler.setCounter(Profiler.BODIES, container.getBodies().size());
+		profiler.setCounter(Profiler.CHUNKS, world.getLoadedChunks().size);
+		profiler.setCounter(Profiler.TICKS, 1);
+		profiler.frame();
+		ticks++;
+	}
+
+	/**
+	 * Loads the chunks around every Hero and waits for them, there's no loading screen to hide behind and a Hero
+	 * walking into a missing chunk would fall out of the world
+	 */
+	private void updateWorld() {
+		if (heroes.isEmpty()) {
+			world.update(0, 0, 0, 0);
+		} else {
+			float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+			float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+			for (int i = 0; i < heroes.size(); i++) {
+				Hero hero = heroes.get(i);
+				minX = Math.min(minX, hero.getPosition().x);
+				minY = Math.min(minY, hero.getPosition().y);
+				maxX = Math.max(maxX, hero.getPosition().x + hero.getWidth());
+				maxY = Math.max(maxY, hero.getPosition().y + hero.getHeight());
+			}
+			world.update(minX, minY, maxX, maxY);
+		}
+		world.finishLoading();
+	}
+
+	/**
+	 * Steps ticks times, adding growHeroes Heroes and growDebris debris every growEvery ticks, and logs the tick
+	 * rate every reportEvery ticks
+	 */
+	public void run(long ticks, int growEvery, int growHeroes, int growDebris, int reportEvery) {
+		long reportStart = System.nanoTime();
+		long runStart = reportStart;
+		for (long tick = 1; tick <= ticks; tick++) {
+			step();
+			if (growEvery > 0 && tick % growEvery == 0) {
+				spawn(growHeroes, growDebris);
+			}
+			if (tick % reportEvery == 0 || tick == ticks) {
+				long now = System.nanoTime();
+				int ticksSinceReport = (int) ((tick - 1) % reportEvery) + 1;
+				report(tick, ticksSinceReport / ((now - reportStart) / 1000000000f));
+				reportStart = now;
+			}
+		}
+		float seconds = (System.nanoTime() - runStart) / 1000000000f;
+		log.info("Ran " + ticks + " ticks in " + seconds + " s, " + Math.round(ticks / seconds) + " ticks/s");
+	}
+
+	private void report(long tick, float ticksPerSecond) {
+		log.info("tick " + tick + ": " + container.size() + " entities, " + container.getBodies().size()
+				+ " bodies, " + world.getLoadedChunks().size + " chunks, " + Math.round(ticksPerSecond)
+				+ " ticks/s, tick p50 " + profiler.getFrameTimePercentile(0.5f) + " ms, p99 "
+				+ profiler.getFrameTimePercentile(0.99f) + " ms");
+	}
+
+	public long getTicks() {
+		return ticks;
+	}
+
+	public List<Hero> getHeroes() {
+		return heroes;
+	}
+
+	public void dispose() {
+		container.clear();
+		container.getBodies().clear();
+		container.getBodies().setWorld(null);
+		terrain.dispose();
+		container.setThreads(1);
+		heroes.clear();
+		inputs.clear();
+		world.dispose();
+	}
+
+	private static void usage() {
+		System.out.println("Options, all optional:");
+		System.out.println("  -ticks n      ticks to run (default 36000, 10 minutes of game time)");
+		System.out.println("  -heroes n     Heroes at the start (default 1)");
+		System.out.println("  -every n      ticks between adding more (default 600)");
+		System.out.println("  -grow n       Heroes added each time (default 10)");
+		System.out.println("  -debris n     debris bodies added each time (default 100)");
+		System.out.println("  -report n     ticks between reports (default 600)");
+		System.out.println("  -seed n       world and input seed (default " + MapResources.DEFAULT_SEED + ")");
+		System.out.println("  -threads n    threads updating entities (default one per core)");
+		System.out.println("  -csv file     write the profile of the last ticks to file at the end");
+	}
+
+	/**
+	 * Runs a simulation with the options described in usage()
+	 */
+	public static void main(String[] args) {
+		long ticks = 36000;
+		int heroes = 1, every = 600, grow = 10, debris = 100, report = 600;
+		long seed = MapResources.DEFAULT_SEED;
+		int threads = Runtime.getRuntime().availableProcessors();
+		String csv = null;
+		try {
+			for (int i = 0; i < args.length; i += 2) {
+				String option = args[i];
+				if (i + 1 >= args.length) {
+					throw new IllegalArgumentException("No value for " + option);
+				}
+				String value = args[i + 1];
+				if (option.equals("-ticks")) {
+					ticks = Long.parseLong(value);
+				} else if (option.equals("-heroes")) {
+					heroes = Integer.parseInt(value);
+				} else if (option.equals("-every")) {
+					every = Integer.parseInt(value);
+				} else if (option.equals("-grow")) {
+					grow = Integer.parseInt(value);
+				} else if (option.equals("-debris")) {
+					debris = Integer.parseInt(value);
+				} else if (option.equals("-report")) {
+					report = Math.max(1, Integer.parseInt(value));
+				} else if (option.equals("-seed")) {
+					seed = Long.parseLong(value);
+				} else if (option.equals("-threads")) {
+					threads = Math.max(1, Integer.parseInt(value));
+				} else if (option.equals("-csv")) {
+					csv = value;
+				} else {
+					throw new IllegalArgumentException("Unknown option " + option);
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			// NumberFormatException is one too
+			log.error(e.getMessage());
+			usage();
+			System.exit(1);
+		}
+
+		Simulation simulation = new Simulation(seed);
+		simulation.create();
+		EntityContainer.getInstance().setThreads(threads);
+		simulation.spawn(Math.max(1, heroes), 0);
+		log.info("Running " + ticks + " ticks with seed " + seed + " on " + threads + " threads");
+		simulation.run(ticks, every, grow, debris, report);
+		if (csv != null) {
+			try {
+				Profiler.getInstance().exportCsv(new File(csv));
+				log.info("Wrote profile to " + csv);
+			} catch (IOException e) {
+				log.error("Could not write profile to " + csv, e);
+			}
+		}
+		simulation.dispose();
+	}
+}
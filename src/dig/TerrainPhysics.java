@@ -0,0 +1,291 @@
+package dig;
+
+import java.util.Arrays;
+
+import com.badlogic.gdx.utils.LongMap;
+
+/**
+ * Makes loose tiles fall and water flow, as a cellular automaton over the wall layer. Only active cells are looked
+ * at: whenever a tile is dug out, the falling and flowing tiles around it become active, and a tile that moves
+ * activates the tiles around where it was and where it went, so only that neighbourhood is looked at the next tick.
+ * Settled terrain costs nothing, however much of the world is loaded or edited elsewhere in the same chunk.
+ * Tiles placed some other way than digging don't fall until something activates them, see activateAround().
+ * At most budget cells are updated per tick, the rest wait in the queue for the next ticks, so a huge cave-in comes
+ * down over a few frames instead of in one long one. Within a tick cells are updated bottom row first, so a column
+ * of sand falls together and nothing moves twice.
+ * Tiles are moved through MapResources.setTile, the renderer, lighting etc. see them move like any other edit.
+ * Call update() once per tick, before MapResources.flushEdits().
+ */
+public class TerrainPhysics implements MapListener {
+	public static final int DEFAULT_BUDGET = 1024; // Cells updated per tick
+
+	private static final int BLOCKED = -1; // Id of cells in chunks that aren't loaded
+
+	private final MapResources world;
+	private int budget = DEFAULT_BUDGET;
+	private final LongMap<Boolean> queued; // Cell key, queued cells so none is queued twice
+	private long[] queue; // Ring buffer of cell keys, waiting to be updated
+	private int head, size;
+	private long[] work; // Cell keys updated this tick, sorted by row
+	private int ticks; // Ticks updated, picks which way water and sand try first
+	private int updated, moved; // Cells updated and tiles that changed during the last update
+
+	// last chunk looked up, neighbouring cells are nearly always in the same chunk
+	private Chunk cachedChunk;
+	private int cachedChunkX, cachedChunkY;
+
+	public TerrainPhysics(MapResources world) {
+		this.world = world;
+		queued = new LongMap<Boolean>();
+		queue = new long[1024];
+		work = new long[256];
+		world.addListener(this);
+	}
+
+	/**
+	 * @param budget Cells updated per tick at most
+	 */
+	public void setBudget(int budget) {
+		this.budget = Math.max(1, budget);
+	}
+
+	public int getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Updates the cells that were active at the start of the tick, up to the budget
+	 * @return Cells updated
+	 */
+	public int update() {
+		int count = Math.min(budget, size);
+		if (work.length < count) {
+			work = new long[Math.max(count, work.length * 2)];
+		}
+		for (int i = 0; i < count; i++) {
+			long key = queue[head];
+			head = (head + 1) & (queue.length - 1);
+			queued.remove(key);
+			work[i] = key;
+		}
+		size -= count;
+		// rows are the high half of the key
+		Arrays.sort(work, 0, count);
+
+		moved = 0;
+		for (int i = 0; i < count; i++) {
+			long key = work[i];
+			updateCell((int) key, (int) (key >> 32));
+		}
+		updated = count;
+		ticks++;
+		return count;
+	}
+
+	private void updateCell(int x, int y) {
+		int id = getId(x, y);
+		if (id <= 0) {
+			return;
+		}
+		switch (Tiles.behaviour(id)) {
+		case Tiles.FALLS:
+			fall(x, y, id, false);
+			break;
+		case Tiles.SLIDES:
+			fall(x, y, id, true);
+			break;
+		case Tiles.FLUID:
+			flow(x, y, waterLevel(id));
+			break;
+		}
+	}
+
+	/**
+	 * Moves a falling tile down, or diagonally down if it slides, swapping places with air or water
+	 */
+	private void fall(int x, int y, int id, boolean slides) {
+		int below = getId(x, y - 1);
+		if (isOpen(below)) {
+			swap(x, y, id, x, y - 1, below);
+			return;
+		}
+		if (!slides) {
+			return;
+		}
+		int side = ((ticks + x) & 1) == 0 ? -1 : 1;
+		for (int i = 0; i < 2; i++, side = -side) {
+			// only through a gap, not around a corner
+			int target = getId(x + side, y - 1);
+			if (isOpen(target) && isOpen(getId(x + side, y))) {
+				swap(x, y, id, x + side, y - 1, target);
+				return;
+			}
+		}
+	}
+
+	private void swap(int x, int y, int id, int toX, int toY, int toId) {
+		set(x, y, toId);
+		set(toX, toY, id);
+	}
+
+	/**
+	 * Pours water down as far as it fits, then spreads what is left sideways towards lower water. Water only moves
+	 * sideways where the levels differ by 2 or more, so every move evens the water out and it always settles
+	 */
+	private void flow(int x, int y, int level) {
+		int below = getId(x, y - 1);
+		if (below == 0 || isWater(below)) {
+			int belowLevel = below == 0 ? 0 : waterLevel(below);
+			int amount = Math.min(level, ProceduralChunkGenerator.WATER_LEVELS - belowLevel);
+			if (amount > 0) {
+				set(x, y - 1, waterTile(belowLevel + amount));
+				level -= amount;
+			}
+		}
+		int side = (ticks & 1) == 0 ? -1 : 1;
+		for (int i = 0; i < 2 && level > 1; i++, side = -side) {
+			int next = getId(x + side, y);
+			if (next != 0 && !isWater(next)) {
+				continue;
+			}
+			int nextLevel = next == 0 ? 0 : waterLevel(next);
+			int amount = (level - nextLevel) / 2;
+			if (amount > 0) {
+				set(x + side, y, waterTile(nextLevel + amount));
+				level -= amount;
+			}
+		}
+		set(x, y, waterTile(level));
+	}
+
+	private static boolean isOpen(int id) {
+		return id == 0 || isWater(id);
+	}
+
+	private static boolean isWater(int id) {
+		return id > 0 && Tiles.behaviour(id) == Tiles.FLUID;
+	}
+
+	private static int waterLevel(int id) {
+		return id - ProceduralChunkGenerator.WATER_TILE + 1;
+	}
+
+	/**
+	 * @return Id of the water tile level deep, 0 for no water
+	 */
+	private static int waterTile(int level) {
+		return level == 0 ? 0 : ProceduralChunkGenerator.WATER_TILE + level - 1;
+	}
+
+	private void set(int x, int y, int id) {
+		if (world.setTile(MapResources.WALL_LAYER, x, y, id)) {
+			moved++;
+			activateAround(x, y);
+		}
+	}
+
+	/**
+	 * @return Wall tile id at x, y, BLOCKED if the chunk isn't loaded so nothing moves into it
+	 */
+	private int getId(int x, int y) {
+		int chunkX = Chunk.toChunk(x), chunkY = Chunk.toChunk(y);
+		if (cachedChunk == null || chunkX != cachedChunkX || chunkY != cachedChunkY) {
+			Chunk chunk = world.getChunk(chunkX, chunkY);
+			if (chunk == null) {
+				return BLOCKED;
+			}
+			cachedChunk = chunk;
+			cachedChunkX = chunkX;
+			cachedChunkY = chunkY;
+		}
+		return cachedChunk.getTile(MapResources.WALL_LAYER, x & Chunk.MASK, y & Chunk.MASK);
+	}
+
+	/**
+	 * Queues the cell at x, y for the next update if it isn't queued yet
+	 */
+	public void activate(int x, int y) {
+		long key = ((long) y << 32) | (x & 0xFFFFFFFFL);
+		if (queued.containsKey(key)) {
+			return;
+		}
+		queued.put(key, Boolean.TRUE);
+		if (size == queue.length) {
+			long[] newQueue = new long[queue.length * 2];
+			for (int i = 0; i < size; i++) {
+				newQueue[i] = queue[(head + i) & (queue.length - 1)];
+			}
+			queue = newQueue;
+			head = 0;
+		}
+		queue[(head + size) & (queue.length - 1)] = key;
+		size++;
+	}
+
+	/**
+	 * Queues the falling and flowing tiles at x, y and the 8 cells around it, for a tile there that changed
+	 */
+	public void activateAround(int x, int y) {
+		for (int cellY = y - 1; cellY <= y + 1; cellY++) {
+			for (int cellX = x - 1; cellX <= x + 1; cellX++) {
+				int id = getId(cellX, cellY);
+				if (id > 0 && Tiles.behaviour(id) != Tiles.STATIC) {
+					activate(cellX, cellY);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return Cells waiting to be updated
+	 */
+	public int getActiveCount() {
+		return size;
+	}
+
+	/**
+	 * @return Cells updated during the last update
+	 */
+	public int getUpdatedCount() {
+		return updated;
+	}
+
+	/**
+	 * @return Tiles that changed during the last update
+	 */
+	public int getMovedCount() {
+		return moved;
+	}
+
+	@Override
+	public void chunkLoaded(Chunk chunk) {
+		// generated and saved terrain counts as settled until something digs near it
+	}
+
+	@Override
+	public void chunkUnloaded(Chunk chunk) {
+		if (chunk == cachedChunk) {
+			cachedChunk = null;
+		}
+		// its queued cells are dropped when they come up, there is no tile left to move
+	}
+
+	@Override
+	public void tilesChanged(Chunk chunk, int x1, int y1, int x2, int y2) {
+		// the rectangle is every edit to the chunk this tick put together, the moves and digs that made it already
+		// activated their own neighbourhoods
+	}
+
+	@Override
+	public void tileDug(int x, int y, int id) {
+		// the tiles next to it can have lost what held them up
+		activateAround(x, y);
+	}
+
+	public void dispose() {
+		world.removeListener(this);
+		queued.clear();
+		size = 0;
+		cachedChunk = null;
+	}
+}
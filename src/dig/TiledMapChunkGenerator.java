@@ -0,0 +1,47 @@
+package dig;
+
+import com.badlogic.gdx.maps.MapLayers;
+import com.badlogic.gdx.maps.tiled.TiledMap;
+import com.badlogic.gdx.maps.tiled.TiledMapTileLayer;
+import com.badlogic.gdx.maps.tiled.TiledMapTileLayer.Cell;
+
+/**
+ * Copies tiles out of a hand made TiledMap (level1.tmx) over what another generator made, anything outside of the
+ * map is left to the other generator. Only reads the map, so it can run on any thread.
+ */
+public class TiledMapChunkGenerator implements ChunkGenerator {
+	private final TiledMap map;
+	private final ChunkGenerator base;
+	
+	/**
+	 * @param base Generates the world around the map, null to leave it empty
+	 */
+	public TiledMapChunkGenerator(TiledMap map, ChunkGenerator base) {
+		this.map = map;
+		this.base = base;
+	}
+	
+	@Override
+	public void generate(Chunk chunk) {
+		if (base != null) {
+			base.generate(chunk);
+		}
+		MapLayers layers = map.getLayers();
+		int layerCount = Math.min(layers.getCount(), chunk.getLayerCount());
+		for (int layer = 0; layer < layerCount; layer++) {
+			TiledMapTileLayer tileLayer = (TiledMapTileLayer) layers.get(layer);
+			// only the part of the chunk that is inside the map
+			int startX = Math.max(-chunk.getTileX(), 0);
+			int startY = Math.max(-chunk.getTileY(), 0);
+			int endX = Math.min(tileLayer.getWidth() - chunk.getTileX(), Chunk.SIZE);
+			int endY = Math.min(tileLayer.getHeight() - chunk.getTileY(), Chunk.SIZE);
+			for (int y = startY; y < endY; y++) {
+				for (int x = startX; x < endX; x++) {
+					Cell cell = tileLayer.getCell(chunk.getTileX() + x, chunk.getTileY() + y);
+					chunk.setTile(layer, x, y, cell != null && cell.getTile() != null ? cell.getTile().getId() : 0);
+				}
+			}
+		}
+		chunk.setModified(false);
+	}
+}
@@ -0,0 +1,115 @@
+package dig;
+
+/**
+ * What a tile id means to the world: whether it is solid and how many hits it takes to dig out. Chunks store every
+ * cell as a short packing the tile id with these flags, so collision and digging test bits of the cell itself
+ * instead of looking the id up anywhere:
+ *
+ * <pre>
+ * bits  0-11  tile id, 0 for an empty cell
+ * bit     12  SOLID
+ * bits 13-15  hardness, the hits left before the tile is dug out
+ * </pre>
+ *
+ * A cell made from an id gets the flags defined for that id, see define(). What a tile does on its own, falling or
+ * flowing, is looked up by id, see setBehaviour().
+ */
+public final class Tiles {
+	public static final int ID_MASK = 0xFFF;
+	public static final int MAX_ID = ID_MASK;
+	public static final int SOLID = 1 << 12;
+	public static final int HARDNESS_SHIFT = 13;
+	public static final int HARDNESS_MASK = 7 << HARDNESS_SHIFT;
+	public static final int MAX_HARDNESS = 7;
+
+	// Behaviours, what TerrainPhysics does with a tile
+	public static final int STATIC = 0; // Stays where it is
+	public static final int FALLS = 1; // Falls straight down into empty space and water
+	public static final int SLIDES = 2; // Falls, and slides off edges into the space diagonally below
+	public static final int FLUID = 3; // Flows down and spreads out sideways until it is level
+
+	// Id, cell a tile with that id starts out as
+	private static final short[] cells = new short[MAX_ID + 1];
+	// Id, behaviour of tiles with that id
+	private static final byte[] behaviours = new byte[MAX_ID + 1];
+
+	static {
+		// anything in the tile set blocks and breaks in one hit unless it says otherwise
+		for (int id = 1; id <= MAX_ID; id++) {
+			define(id, true, 1);
+		}
+		define(ProceduralChunkGenerator.STONE_TILE, true, 2);
+		define(ProceduralChunkGenerator.ORE_TILE, true, 3);
+		setBehaviour(ProceduralChunkGenerator.SAND_TILE, SLIDES);
+		setBehaviour(ProceduralChunkGenerator.GRAVEL_TILE, FALLS);
+		for (int level = 0; level < ProceduralChunkGenerator.WATER_LEVELS; level++) {
+			define(ProceduralChunkGenerator.WATER_TILE + level, false, 1);
+			setBehaviour(ProceduralChunkGenerator.WATER_TILE + level, FLUID);
+		}
+	}
+
+	private Tiles() {
+	}
+
+	/**
+	 * Sets the flags every tile with id starts out with, call before any chunk is loaded
+	 * @param hardness Hits it takes to dig the tile out, from 1 to MAX_HARDNESS
+	 */
+	public static void define(int id, boolean solid, int hardness) {
+		if (id <= 0 || id > MAX_ID) {
+			throw new IllegalArgumentException("Tile id out of range: " + id);
+		}
+		hardness = Math.max(1, Math.min(hardness, MAX_HARDNESS));
+		cells[id] = (short) (id | (solid ? SOLID : 0) | (hardness << HARDNESS_SHIFT));
+	}
+
+	/**
+	 * Sets what TerrainPhysics does with tiles with id
+	 * @param behaviour STATIC, FALLS, SLIDES or FLUID
+	 */
+	public static void setBehaviour(int id, int behaviour) {
+		if (id <= 0 || id > MAX_ID) {
+			throw new IllegalArgumentException("Tile id out of range: " + id);
+		}
+		behaviours[id] = (byte) behaviour;
+	}
+
+	/**
+	 * @return STATIC, FALLS, SLIDES or FLUID, STATIC for id 0
+	 */
+	public static int behaviour(int id) {
+		return behaviours[id & ID_MASK];
+	}
+
+	/**
+	 * @return Cell for a fresh tile with id, 0 for id 0
+	 */
+	public static int cell(int id) {
+		return cells[id & ID_MASK] & 0xFFFF;
+	}
+
+	/**
+	 * @param cell A cell as stored in a chunk, a short is fine as is
+	 */
+	public static int id(int cell) {
+		return cell & ID_MASK;
+	}
+
+	public static boolean isSolid(int cell) {
+		return (cell & SOLID) != 0;
+	}
+
+	/**
+	 * @return Hits left before the tile in cell is dug out
+	 */
+	public static int hardness(int cell) {
+		return (cell & HARDNESS_MASK) >>> HARDNESS_SHIFT;
+	}
+
+	/**
+	 * @return cell with its hardness replaced
+	 */
+	public static int withHardness(int cell, int hardness) {
+		return (cell & ~HARDNESS_MASK) | (hardness << HARDNESS_SHIFT);
+	}
+}
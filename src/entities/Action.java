@@ -0,0 +1,8 @@
+package entities;
+
+/**
+ * Things the player can tell a Hero to do, mapped to keys by dig.KeyBindings
+ */
+public enum Action {
+	Jump, Left, Right, Bomb
+}
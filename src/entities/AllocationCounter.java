@@ -0,0 +1,107 @@
+package entities;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Counts the heap bytes the owning thread, the one that created the counter, allocates between begin() and end(),
+ * summed up per frame. begin()/end() pairs can be nested, only the outermost pair counts, and calls from other
+ * threads are ignored, so code that also runs on worker threads can be wrapped in them. Threads doing work for the
+ * owner measure themselves with getCurrentThreadBytes() and the owner adds that in with add(), see ParallelUpdater.
+ * Relies on the HotSpot specific thread allocation counter, isSupported() is false on VMs without it.
+ */
+public class AllocationCounter {
+	private static final com.sun.management.ThreadMXBean threads;
+
+	static {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		com.sun.management.ThreadMXBean hotspot = null;
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			hotspot = (com.sun.management.ThreadMXBean) bean;
+			if (hotspot.isThreadAllocatedMemorySupported()) {
+				hotspot.setThreadAllocatedMemoryEnabled(true);
+			} else {
+				hotspot = null;
+			}
+		}
+		threads = hotspot;
+	}
+
+	public static boolean isSupported() {
+		return threads != null;
+	}
+
+	private final Thread owner;
+	private boolean enabled;
+	private int depth; // begin() calls without their end() yet
+	private long start;
+	private long frameBytes; // Bytes counted so far this frame
+	private long lastFrameBytes; // Bytes counted during the previous frame
+	private long totalBytes;
+
+	public AllocationCounter() {
+		owner = Thread.currentThread();
+	}
+
+	/**
+	 * Counting is off by default since every begin()/end() pair costs a call into the VM
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled && isSupported();
+		depth = 0;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void begin() {
+		if (enabled && Thread.currentThread() == owner && depth++ == 0) {
+			start = threads.getThreadAllocatedBytes(owner.getId());
+		}
+	}
+
+	public void end() {
+		if (enabled && Thread.currentThread() == owner && depth > 0 && --depth == 0) {
+			long bytes = threads.getThreadAllocatedBytes(owner.getId()) - start;
+			frameBytes += bytes;
+			totalBytes += bytes;
+		}
+	}
+
+	/**
+	 * Counts bytes another thread allocated on the owner's behalf, call from the owner inside begin()/end()
+	 */
+	void add(long bytes) {
+		if (enabled && Thread.currentThread() == owner && depth > 0) {
+			frameBytes += bytes;
+			totalBytes += bytes;
+		}
+	}
+
+	/**
+	 * @return Bytes the calling thread has allocated since it started, only call while a counter is enabled
+	 */
+	static long getCurrentThreadBytes() {
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Ends the current frame, call once per frame
+	 */
+	public void frame() {
+		lastFrameBytes = frameBytes;
+		frameBytes = 0;
+	}
+
+	/**
+	 * @return Bytes allocated inside begin()/end() during the last full frame, 0 in steady state
+	 */
+	public long getLastFrameBytes() {
+		return lastFrameBytes;
+	}
+
+	public long getTotalBytes() {
+		return totalBytes;
+	}
+}
@@ -0,0 +1,321 @@
+package entities;
+
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.math.Rectangle;
+
+import dig.MapResources;
+import dig.Profiler;
+
+/**
+ * Keeps large numbers of simple bodies (falling debris, gibs...) as columns of primitive arrays instead of as
+ * Entity objects, so updating them is a few tight loops over contiguous memory. Bodies have no behaviour of their
+ * own: they fall, bounce off tiles, slow down and expire. Anything that needs to think should be an Entity.
+ * A body is referred to by its index, which stays valid until a body is removed: the last body is moved into the
+ * hole, like EntityContainer does with its list.
+ */
+public class ComponentStore {
+	// Flags of a body
+	public static final int GRAVITY = 1; // Falls with GameConstants.GRAVITY
+	public static final int COLLIDE = 2; // Stops at solid tiles
+
+	// Furthest a body moves on either axis in one tick, in tiles. Below one so collide() can't step over a tile
+	private static final float MAX_STEP = 0.9f;
+
+	private static final State[] STATES = State.values();
+
+	private int size;
+	private float[] x, y;
+	private float[] previousX, previousY;
+	private float[] velocityX, velocityY;
+	private float[] width, height;
+	private float[] damping; // Multiplied into velocityX every tick
+	private float[] stateTime;
+	private float[] life; // Seconds left before the body is removed, infinite by default
+	private int[] state; // State ordinal
+	private int[] flags;
+	private TextureRegion[] regions;
+
+	private MapResources world;
+	private int rendered; // Bodies drawn by the last render
+
+	public ComponentStore(int capacity) {
+		allocate(Math.max(capacity, 1));
+	}
+
+	private void allocate(int capacity) {
+		x = resize(x, capacity);
+		y = resize(y, capacity);
+		previousX = resize(previousX, capacity);
+		previousY = resize(previousY, capacity);
+		velocityX = resize(velocityX, capacity);
+		velocityY = resize(velocityY, capacity);
+		width = resize(width, capacity);
+		height = resize(height, capacity);
+		damping = resize(damping, capacity);
+		stateTime = resize(stateTime, capacity);
+		life = resize(life, capacity);
+		int[] newState = new int[capacity];
+		int[] newFlags = new int[capacity];
+		TextureRegion[] newRegions = new TextureRegion[capacity];
+		if (state != null) {
+			System.arraycopy(state, 0, newState, 0, size);
+			System.arraycopy(flags, 0, newFlags, 0, size);
+			System.arraycopy(regions, 0, newRegions, 0, size);
+		}
+		state = newState;
+		flags = newFlags;
+		regions = newRegions;
+	}
+
+	private float[] resize(float[] array, int capacity) {
+		float[] newArray = new float[capacity];
+		if (array != null) {
+			System.arraycopy(array, 0, newArray, 0, size);
+		}
+		return newArray;
+	}
+
+	/**
+	 * Sets the world bodies with the COLLIDE flag collide with, null to let them fall through everything
+	 */
+	public void setWorld(MapResources world) {
+		this.world = world;
+	}
+
+	/**
+	 * Adds a body at rest with GRAVITY and COLLIDE set, the arrays grow when they are full
+	 * @param x Left of the body
+	 * @param y Bottom of the body
+	 * @param region What to draw, may be null for bodies that aren't drawn
+	 * @return Index of the new body
+	 */
+	public int add(float x, float y, float width, float height, TextureRegion region) {
+		if (size == this.x.length) {
+			allocate(size * 2);
+		}
+		int i = size++;
+		this.x[i] = this.previousX[i] = x;
+		this.y[i] = this.previousY[i] = y;
+		this.width[i] = width;
+		this.height[i] = height;
+		velocityX[i] = velocityY[i] = 0;
+		damping[i] = 1;
+		stateTime[i] = 0;
+		life[i] = Float.POSITIVE_INFINITY;
+		state[i] = State.Standing.ordinal();
+		flags[i] = GRAVITY | COLLIDE;
+		regions[i] = region;
+		return i;
+	}
+
+	/**
+	 * Removes a body by moving the last body into its index
+	 */
+	public void remove(int i) {
+		int last = --size;
+		if (i != last) {
+			x[i] = x[last];
+			y[i] = y[last];
+			previousX[i] = previousX[last];
+			previousY[i] = previousY[last];
+			velocityX[i] = velocityX[last];
+			velocityY[i] = velocityY[last];
+			width[i] = width[last];
+			height[i] = height[last];
+			damping[i] = damping[last];
+			stateTime[i] = stateTime[last];
+			life[i] = life[last];
+			state[i] = state[last];
+			flags[i] = flags[last];
+			regions[i] = regions[last];
+		}
+		regions[last] = null;
+	}
+
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			regions[i] = null;
+		}
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Moves every body one tick, one property at a time so each loop only touches the arrays it needs
+	 */
+	public void update(float deltaTime) {
+		int n = size;
+		for (int i = 0; i < n; i++) {
+			stateTime[i] += deltaTime;
+			life[i] -= deltaTime;
+		}
+		System.arraycopy(x, 0, previousX, 0, n);
+		System.arraycopy(y, 0, previousY, 0, n);
+		for (int i = 0; i < n; i++) {
+			// scaled by the tick length, so the tick rate doesn't change how hard bodies fall
+			if ((flags[i] & GRAVITY) != 0) {
+				velocityY[i] += GameConstants.GRAVITY * deltaTime;
+			}
+			velocityX[i] *= damping[i];
+		}
+		// terminal velocity, however long the tick
+		float maxSpeed = MAX_STEP / deltaTime;
+		for (int i = 0; i < n; i++) {
+			velocityX[i] = Math.max(-maxSpeed, Math.min(velocityX[i], maxSpeed));
+			velocityY[i] = Math.max(-maxSpeed, Math.min(velocityY[i], maxSpeed));
+		}
+		for (int i = 0; i < n; i++) {
+			x[i] += velocityX[i] * deltaTime;
+			y[i] += velocityY[i] * deltaTime;
+		}
+		if (world != null) {
+			long start = Profiler.getInstance().start();
+			for (int i = 0; i < n; i++) {
+				if ((flags[i] & COLLIDE) != 0) {
+					collide(i);
+				}
+			}
+			Profiler.getInstance().stop(Profiler.COLLISION, start);
+		}
+		// backwards, so removing only ever moves in a body that was already checked
+		for (int i = n - 1; i >= 0; i--) {
+			if (life[i] <= 0) {
+				remove(i);
+			}
+		}
+	}
+
+	/**
+	 * Pushes a body out of the tile its leading edges moved into. Bodies are assumed to be smaller than a tile, and
+	 * update() keeps them from moving a tile or more per tick, so only the tiles at the middle of the edges are
+	 * checked
+	 */
+	private void collide(int i) {
+		float centerX = x[i] + width[i] / 2;
+		if (velocityY[i] < 0) {
+			int row = (int) Math.floor(y[i]);
+			if (world.isSolid((int) Math.floor(centerX), row)) {
+				y[i] = row + 1;
+				velocityY[i] = 0;
+			}
+		} else if (velocityY[i] > 0) {
+			int row = (int) Math.floor(y[i] + height[i]);
+			if (world.isSolid((int) Math.floor(centerX), row)) {
+				y[i] = row - height[i];
+				velocityY[i] = 0;
+			}
+		}
+		int middleRow = (int) Math.floor(y[i] + height[i] / 2);
+		if (velocityX[i] < 0) {
+			int column = (int) Math.floor(x[i]);
+			if (world.isSolid(column, middleRow)) {
+				x[i] = column + 1;
+				velocityX[i] = 0;
+			}
+		} else if (velocityX[i] > 0) {
+			int column = (int) Math.floor(x[i] + width[i]);
+			if (world.isSolid(column, middleRow)) {
+				x[i] = column - width[i];
+				velocityX[i] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Draws the bodies that have a region and overlap view, the batch must have been begun
+	 * @param view What the camera sees, null to draw everything
+	 */
+	void render(SpriteBatch batch, float alpha, Rectangle view) {
+		rendered = 0;
+		for (int i = 0; i < size; i++) {
+			TextureRegion region = regions[i];
+			if (region == null) {
+				continue;
+			}
+			float drawX = previousX[i] + (x[i] - previousX[i]) * alpha;
+			float drawY = previousY[i] + (y[i] - previousY[i]) * alpha;
+			if (view != null && (drawX + width[i] < view.x || drawX > view.x + view.width
+					|| drawY + height[i] < view.y || drawY > view.y + view.height)) {
+				continue;
+			}
+			batch.draw(region, drawX, drawY, width[i], height[i]);
+			rendered++;
+		}
+	}
+
+	/**
+	 * @return Number of bodies drawn by the last render
+	 */
+	public int getRenderedCount() {
+		return rendered;
+	}
+
+	public float getX(int i) {
+		return x[i];
+	}
+
+	public float getY(int i) {
+		return y[i];
+	}
+
+	public void setPosition(int i, float x, float y) {
+		this.x[i] = previousX[i] = x;
+		this.y[i] = previousY[i] = y;
+	}
+
+	public float getVelocityX(int i) {
+		return velocityX[i];
+	}
+
+	public float getVelocityY(int i) {
+		return velocityY[i];
+	}
+
+	public void setVelocity(int i, float velocityX, float velocityY) {
+		this.velocityX[i] = velocityX;
+		this.velocityY[i] = velocityY;
+	}
+
+	public void setDamping(int i, float damping) {
+		this.damping[i] = damping;
+	}
+
+	public State getState(int i) {
+		return STATES[state[i]];
+	}
+
+	/**
+	 * Sets the state and restarts the state time
+	 */
+	public void setState(int i, State state) {
+		this.state[i] = state.ordinal();
+		stateTime[i] = 0;
+	}
+
+	public float getStateTime(int i) {
+		return stateTime[i];
+	}
+
+	/**
+	 * @param life Seconds until the body is removed
+	 */
+	public void setLife(int i, float life) {
+		this.life[i] = life;
+	}
+
+	public int getFlags(int i) {
+		return flags[i];
+	}
+
+	public void setFlags(int i, int flags) {
+		this.flags[i] = flags;
+	}
+
+	public void setRegion(int i, TextureRegion region) {
+		regions[i] = region;
+	}
+}
@@ -1,28 +1,93 @@
 package entities;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.graphics.g2d.Animation;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.utils.Pool;
+import com.badlogic.gdx.utils.Pool.Poolable;
 
-public abstract class Entity {
+public abstract class Entity implements Poolable {
 	private float width, height;
 	private float maxVelo, minVelo;
 	private float damping; // Slow down
 	private State state; 
 	
 	private final Vector2 position; // Use sets here,
+	private final Vector2 previousPosition; // Position before the last update, rendering interpolates from it
 	private final Vector2 velocity;
 	private float stateTime; // Time of 
 	
-	private Map<String, Animation> animations;
+	// State ordinal, animation played in that state or null. Shared with the prototype when copied, treat as read
+	// only on copies
+	private Animation[] animations;
+	
+	// Pool the Entity goes back to when it is despawned, null if it wasn't made by the EntityFactory
+	Pool<Entity> pool;
+	boolean despawned; // Goes back to the pool once the container has removed it
+	
+	// Bookkeeping for the EntityContainer the Entity is in, index into its lists
+	int containerIndex = -1;
+	int typeIndex = -1;
+	
+	// Bookkeeping for the SpatialGrid the Entity is in
+	long gridCell;
+	boolean inGrid;
+	
+	// Time skipped while asleep far outside of the view, handed to the next update
+	float sleepTime;
+	
+	// Frame picked for this render, set by EntityContainer so it can sort by texture before drawing
+	TextureRegion frame;
 	
 	public Entity() {
 		this.position = new Vector2();
+		this.previousPosition = new Vector2();
 		this.velocity = new Vector2();
 		this.stateTime = 0;
-		this.animations = new HashMap<String, Animation>();
+		this.animations = new Animation[State.values().length];
+	}
+	
+	/**
+	 * @return A new, blank Entity of the same class, used by copy()
+	 */
+	protected abstract Entity newInstance();
+	
+	/**
+	 * Makes a new Entity set up like this one. Sizes, limits, state and animations are copied,
+	 * the animations are shared instead of duplicated
+	 */
+	public Entity copy() {
+		Entity e = newInstance();
+		e.copyFrom(this);
+		return e;
+	}
+	
+	/**
+	 * Sets this Entity up like prototype, position and velocity are left as they are
+	 * @param prototype Entity to copy from
+	 */
+	public void copyFrom(Entity prototype) {
+		width = prototype.width;
+		height = prototype.height;
+		maxVelo = prototype.maxVelo;
+		minVelo = prototype.minVelo;
+		damping = prototype.damping;
+		state = prototype.state;
+		animations = prototype.animations;
+	}
+	
+	/**
+	 * Clears everything that changes while the Entity is alive so it can be reused from a pool
+	 */
+	@Override
+	public void reset() {
+		position.set(0, 0);
+		previousPosition.set(0, 0);
+		velocity.set(0, 0);
+		stateTime = 0;
+		sleepTime = 0;
+		frame = null;
 	}
 	
 	/**
@@ -34,8 +99,36 @@ public abstract class Entity {
 		// Handle physics, general updates
 	}
 	
-	public void render() { 
-		// Render sprites: Note: can we sprite batch all draws at once or is there a limit? If not open the batch inside of the container and pass it in, if there is then consider the cost of the draws
+	/**
+	 * @return The frame of the current state's animation, null if there is nothing to draw
+	 */
+	public TextureRegion getFrame() {
+		Animation animation = state == null ? null : animations[state.ordinal()];
+		return animation == null ? null : animation.getKeyFrame(stateTime);
+	}
+	
+	/**
+	 * @return Whether the frame should be drawn mirrored on the x-axis
+	 */
+	public boolean isFlipped() {
+		return false;
+	}
+	
+	/**
+	 * Draws frame between the previous and current position. The batch is opened once by the container
+	 * for all Entitys, so never begin or end it here
+	 * @param batch Batch that has already been begun
+	 * @param frame Frame to draw, from getFrame()
+	 * @param alpha How far along the current tick is, 0 draws at the previous position and 1 at the current one
+	 */
+	public void render(SpriteBatch batch, TextureRegion frame, float alpha) {
+		float x = previousPosition.x + (position.x - previousPosition.x) * alpha;
+		float y = previousPosition.y + (position.y - previousPosition.y) * alpha;
+		if (isFlipped()) {
+			batch.draw(frame, x + width, y, -width, height);
+		} else {
+			batch.draw(frame, x, y, width, height);
+		}
 	}
 	
 	public void setState(State state) {
@@ -62,6 +155,10 @@ public abstract class Entity {
 		this.height = height;
 	}
 	
+	public float getStateTime() {
+		return stateTime;
+	}
+	
 	public float getMaxVelocity() {
 		return maxVelo;
 	}
@@ -74,15 +171,22 @@ public abstract class Entity {
 		return position;
 	}
 	
+	public Vector2 getPreviousPosition() {
+		return previousPosition;
+	}
+	
 	public Vector2 getVelocity() {
 		return velocity;
 	}
 	
-	public void addAnimation(String name, Animation animation) {
-		animations.put(name, animation);
+	/**
+	 * Sets the animation getFrame() plays while the Entity is in state, set them up on the prototype
+	 */
+	public void setAnimation(State state, Animation animation) {
+		animations[state.ordinal()] = animation;
 	}
 	
-	public Animation getAnimation(String name) {
-		return animations.get(name);
+	public Animation getAnimation(State state) {
+		return animations[state.ordinal()];
 	}
  }
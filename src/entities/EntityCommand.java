@@ -0,0 +1,10 @@
+package entities;
+
+/**
+ * Something an Entity wants done to the world or to other Entitys during its update, see EntityContainer.defer.
+ * Deferred commands run on the main thread after every Entity has been updated, so updates can run in parallel
+ * without touching anything but their own Entity.
+ */
+public interface EntityCommand {
+	public void execute();
+}
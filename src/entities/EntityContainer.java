@@ -1,75 +1,543 @@
 package entities;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.math.Rectangle;
-import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.Array;
 
 public class EntityContainer {
 	private static EntityContainer instance;
-	
+
 	public static EntityContainer getInstance() {
 		if (instance == null) {
 			instance = new EntityContainer();
 		}
 		return instance;
 	}
-	
+
+	// Cell size of the spatial index in world units (tiles), a bit bigger than most entities and queries
+	private static final float GRID_CELL_SIZE = 4f;
+
+	// Groups Entitys that draw from the same texture so the batch only flushes when the texture changes
+	private static final Comparator<Entity> TEXTURE_ORDER = new Comparator<Entity>() {
+		@Override
+		public int compare(Entity a, Entity b) {
+			int handleA = a.frame.getTexture().getTextureObjectHandle();
+			int handleB = b.frame.getTexture().getTextureObjectHandle();
+			return handleA < handleB ? -1 : (handleA == handleB ? 0 : 1);
+		}
+	};
 
 	private List<Entity> entities;
-	
+	private SpatialGrid grid; // Entitys by position
+	private Map<Class<? extends Entity>, List<Entity>> types; // Entitys by their exact class
+	private List<Class<? extends Entity>> typeKeys; // Keys of types, for iterating without an iterator
+	private AllocationCounter allocations; // Heap allocated by update, on every thread, and the buffer queries
+	private Array<Entity> renderList; // Entitys being drawn this frame, reused between frames
+	private ComponentStore bodies; // Simple bodies kept in arrays instead of as Entitys, for debris and the like
+	private ParticleSystem particles; // Effects, drawn after the bodies
+
+	// Adds and removes made while updating, applied after the update so the list doesn't change under it
+	private boolean updating;
+	private Array<Entity> pendingAdds;
+	private Array<Entity> pendingRemovals;
+	private Array<EntityCommand> commands; // Deferred by update, run after it
+
+	// Updates the Entitys on several threads once there are enough of them to be worth it, null when single threaded
+	private static final int PARALLEL_THRESHOLD = 512;
+	private ParallelUpdater parallel;
+
+	private RenderCollector renderCollector; // Fills renderList from grid queries
+
+	// What the camera sees, nothing outside of it is drawn
+	private final Rectangle view;
+	private boolean hasView;
+	private float maxEntitySize; // Widest/tallest Entity added, how far outside the view an Entity's x,y can be and still show
+
+	// Entitys further than sleepDistance outside of the view are only updated every SLEEP_INTERVAL ticks, with the
+	// time they slept as deltaTime. Off by default, Entitys have to scale everything by deltaTime for this to work
+	private static final int SLEEP_INTERVAL = 8;
+	private boolean sleepEnabled;
+	private float sleepDistance = 16f;
+	private int tickCount;
+
+	// Stats of the last render
+	private int renderCalls; // Batch flushes, each one is a draw call
+	private int textureSwitches;
+	private int rendered;
+	private int culled;
+
 	private EntityContainer() {
 		entities = new ArrayList<Entity>();
+		grid = new SpatialGrid(GRID_CELL_SIZE);
+		types = new HashMap<Class<? extends Entity>, List<Entity>>();
+		typeKeys = new ArrayList<Class<? extends Entity>>();
+		allocations = new AllocationCounter();
+		renderList = new Array<Entity>(false, 64);
+		bodies = new ComponentStore(256);
+		particles = new ParticleSystem(ParticleSystem.DEFAULT_CAPACITY);
+		renderCollector = new RenderCollector();
+		pendingAdds = new Array<Entity>(false, 16);
+		pendingRemovals = new Array<Entity>(false, 16);
+		commands = new Array<EntityCommand>(16);
+		view = new Rectangle();
+	}
+
+	/**
+	 * Adds an Entity to the container so it is updated, rendered and can be found by queries.
+	 * Entitys added during update are added once the update is done
+	 * @param e Entity to add
+	 */
+	public void add(Entity e) {
+		if (updating) {
+			ParallelUpdater.Partition partition = parallel != null ? parallel.current() : null;
+			(partition != null ? partition.adds : pendingAdds).add(e);
+			return;
+		}
+		maxEntitySize = Math.max(maxEntitySize, Math.max(e.getWidth(), e.getHeight()));
+		e.containerIndex = entities.size();
+		entities.add(e);
+		grid.insert(e);
+		List<Entity> sameType = types.get(e.getClass());
+		if (sameType == null) {
+			sameType = new ArrayList<Entity>();
+			types.put(e.getClass(), sameType);
+			typeKeys.add(e.getClass());
+		}
+		e.typeIndex = sameType.size();
+		sameType.add(e);
+	}
+
+	/**
+	 * Removes an Entity from the container, Entitys removed during update are removed once the update is done
+	 * @param e Entity to remove
+	 */
+	public void remove(Entity e) {
+		if (updating) {
+			ParallelUpdater.Partition partition = parallel != null ? parallel.current() : null;
+			(partition != null ? partition.removals : pendingRemovals).add(e);
+			return;
+		}
+		int index = e.containerIndex;
+		if (index < 0 || index >= entities.size() || entities.get(index) != e) {
+			freeIfDespawned(e);
+			return;
+		}
+		// order doesn't matter, so fill the hole with the last Entity instead of shifting everything down
+		removeSwap(entities, index).containerIndex = index;
+		e.containerIndex = -1;
+		grid.remove(e);
+		List<Entity> sameType = types.get(e.getClass());
+		removeSwap(sameType, e.typeIndex).typeIndex = e.typeIndex;
+		e.typeIndex = -1;
+		freeIfDespawned(e);
+	}
+
+	private static void freeIfDespawned(Entity e) {
+		if (e.despawned) {
+			// only hand it back to its pool now that the container doesn't refer to it anymore
+			e.despawned = false;
+			e.pool.free(e);
+		}
+	}
+
+	/**
+	 * Removes the element at index by moving the last element into its place
+	 * @return The element now at index, or the removed one if it was the last
+	 */
+	private static Entity removeSwap(List<Entity> list, int index) {
+		Entity last = list.remove(list.size() - 1);
+		if (index < list.size()) {
+			list.set(index, last);
+		}
+		return last;
+	}
+
+	/**
+	 * Removes all Entitys from the container
+	 */
+	public void clear() {
+		for (int i = 0; i < entities.size(); i++) {
+			entities.get(i).containerIndex = -1;
+			entities.get(i).typeIndex = -1;
+		}
+		entities.clear();
+		grid.clear();
+		types.clear();
+		typeKeys.clear();
+		bodies.clear();
+		particles.clear();
 	}
-	
-	// TODO: getEntities in (x, y, x2, y2) bounds
-	// TODO: getEntities of type X
-	
+
+	public int size() {
+		return entities.size();
+	}
+
 	/**
-	 * Calls the update function of all Entitys contained within the container
+	 * Calls the update function of all Entitys contained within the container, called once per fixed tick
 	 * @param deltaTime Time changed since last update
 	 */
 	public void update(float deltaTime) {
-		for (int i = 0; i < entities.size(); i++) {
-			Entity e = entities.get(i);
-			e.update(deltaTime);
+		allocations.begin();
+		tickCount++;
+		updating = true;
+		if (parallel != null && entities.size() >= PARALLEL_THRESHOLD) {
+			parallel.update(entities.size(), deltaTime, allocations);
+			// the grid isn't thread safe, so it catches up with the new positions afterwards
+			for (int i = 0; i < entities.size(); i++) {
+				grid.update(entities.get(i));
+			}
+			// in partition order, so the outcome doesn't depend on thread timing
+			for (int p = 0; p < parallel.getPartitionCount(); p++) {
+				ParallelUpdater.Partition partition = parallel.getPartition(p);
+				pendingRemovals.addAll(partition.removals);
+				pendingAdds.addAll(partition.adds);
+				commands.addAll(partition.commands);
+				partition.removals.clear();
+				partition.adds.clear();
+				partition.commands.clear();
+			}
+		} else {
+			for (int i = 0; i < entities.size(); i++) {
+				updateEntity(i, deltaTime);
+				// keep the spatial index in step with the entity's new position
+				grid.update(entities.get(i));
+			}
+		}
+		updating = false;
+		applyPending();
+		for (int i = 0; i < commands.size; i++) {
+			commands.get(i).execute();
+		}
+		commands.clear();
+		bodies.update(deltaTime);
+		particles.update(deltaTime);
+		allocations.end();
+	}
+
+	/**
+	 * Updates the Entity at index i unless it is asleep, may be called from several threads at once
+	 */
+	void updateEntity(int i, float deltaTime) {
+		Entity e = entities.get(i);
+		float entityDelta = deltaTime + e.sleepTime;
+		if (sleepEnabled && isFarFromView(e)) {
+			// spread the sleeping Entitys over the ticks instead of waking them all at once
+			if ((i + tickCount) % SLEEP_INTERVAL != 0) {
+				e.sleepTime = entityDelta;
+				return;
+			}
+		}
+		e.sleepTime = 0;
+		e.getPreviousPosition().set(e.getPosition());
+		e.update(entityDelta);
+	}
+
+	/**
+	 * Runs a command after every Entity has been updated. Entitys that change the world or other Entitys from their
+	 * update should do it through here, updates may run in parallel. Runs the command right away outside of update
+	 */
+	public void defer(EntityCommand command) {
+		if (!updating) {
+			command.execute();
+			return;
 		}
+		ParallelUpdater.Partition partition = parallel != null ? parallel.current() : null;
+		(partition != null ? partition.commands : commands).add(command);
 	}
-	
+
+	/**
+	 * Sets how many threads update the Entitys, the calling thread included. Updates only go parallel once there
+	 * are a few hundred Entitys, below that the threads cost more than they save
+	 * @param threads 1 to update everything on the calling thread
+	 */
+	public void setThreads(int threads) {
+		if (threads == getThreads()) {
+			return;
+		}
+		if (parallel != null) {
+			parallel.dispose();
+			parallel = null;
+		}
+		if (threads > 1) {
+			parallel = new ParallelUpdater(this, threads);
+		}
+	}
+
+	public int getThreads() {
+		return parallel != null ? parallel.getThreads() : 1;
+	}
+
+	private void applyPending() {
+		for (int i = 0; i < pendingRemovals.size; i++) {
+			Entity e = pendingRemovals.get(i);
+			// added and removed in the same update, it never makes it into the container. remove() still hands it
+			// back to its pool if it was despawned
+			pendingAdds.removeValue(e, true);
+			remove(e);
+		}
+		pendingRemovals.clear();
+		for (int i = 0; i < pendingAdds.size; i++) {
+			add(pendingAdds.get(i));
+		}
+		pendingAdds.clear();
+	}
+
 	/**
 	 * Returns List<Entity> where all the Entitys' x,y are within the rectangle created by points (x1, y1) and (x2, y2)
-	 * @param x1 
+	 * @param x1
 	 * @param y1
 	 * @param x2
 	 * @param y2
 	 * @return
 	 */
 	public List<Entity> getEntities(float x1, float y1, float x2, float y2) {
-		Rectangle bounds = new Rectangle(Math.min(x1, x2), Math.min(y1, y2), Math.abs(x1 - x2), Math.abs(y1 - y2));
-		return getEntities(bounds);
+		return getEntities(x1, y1, x2, y2, null);
 	}
-	
-	public List<Entity> getEntities(Rectangle bounds) {
+
+	/**
+	 * Returns List<Entity> where all the Entitys' x,y are within the rectangle created by points (x1, y1) and (x2, y2)
+	 * and that are an instance of type
+	 * @param type Class the Entitys must be an instance of, null for any Entity
+	 */
+	public List<Entity> getEntities(float x1, float y1, float x2, float y2, Class<? extends Entity> type) {
 		List<Entity> ret = new ArrayList<Entity>();
-		
-		for (Entity e : entities) {
-			if (bounds.contains(e.getPosition())) {
-				ret.add(e);
+		grid.query(Math.min(x1, x2), Math.min(y1, y2), Math.max(x1, x2), Math.max(y1, y2), type, ret);
+		return ret;
+	}
+
+	public List<Entity> getEntities(Rectangle bounds) {
+		return getEntities(bounds.x, bounds.y, bounds.x + bounds.width, bounds.y + bounds.height, null);
+	}
+
+	/**
+	 * Same as getEntities(x1, y1, x2, y2, type) but fills a list owned by the caller instead of allocating one,
+	 * keep the list around between frames so it doesn't have to grow again
+	 * @param ret Cleared and then filled with the matching Entitys
+	 * @return Number of Entitys found
+	 */
+	public int getEntities(float x1, float y1, float x2, float y2, Class<? extends Entity> type, List<? super Entity> ret) {
+		allocations.begin();
+		ret.clear();
+		grid.query(Math.min(x1, x2), Math.min(y1, y2), Math.max(x1, x2), Math.max(y1, y2), type, ret);
+		allocations.end();
+		return ret.size();
+	}
+
+	/**
+	 * Calls visitor for every Entity whose x,y is within the rectangle created by points (x1, y1) and (x2, y2)
+	 * and that is an instance of type, nothing is allocated
+	 * @param type Class the Entitys must be an instance of, null for any Entity
+	 */
+	public void visitEntities(float x1, float y1, float x2, float y2, Class<? extends Entity> type, EntityVisitor visitor) {
+		allocations.begin();
+		grid.query(Math.min(x1, x2), Math.min(y1, y2), Math.max(x1, x2), Math.max(y1, y2), type, visitor);
+		allocations.end();
+	}
+
+	/**
+	 * Returns all Entitys that are an instance of type
+	 * @param type Class the Entitys must be an instance of
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Entity> List<T> getEntities(Class<T> type) {
+		List<T> ret = new ArrayList<T>();
+		// only a handful of classes exist so checking each of them is cheap
+		for (int i = 0; i < typeKeys.size(); i++) {
+			Class<? extends Entity> key = typeKeys.get(i);
+			if (type.isAssignableFrom(key)) {
+				ret.addAll((List<T>) types.get(key));
 			}
 		}
 		return ret;
-		
 	}
-	
+
 	/**
-	 * Calls the render function of all Entitys contained within the container
+	 * Same as getEntities(type) but fills a list owned by the caller instead of allocating one
+	 * @param ret Cleared and then filled with the matching Entitys
+	 * @return Number of Entitys found
 	 */
-	public void render() {
-		for (int i = 0; i < entities.size(); i++) {
-			entities.get(i).render();
+	@SuppressWarnings("unchecked")
+	public <T extends Entity> int getEntities(Class<T> type, List<? super T> ret) {
+		allocations.begin();
+		ret.clear();
+		for (int i = 0; i < typeKeys.size(); i++) {
+			Class<? extends Entity> key = typeKeys.get(i);
+			if (type.isAssignableFrom(key)) {
+				List<Entity> sameType = types.get(key);
+				for (int j = 0; j < sameType.size(); j++) {
+					ret.add((T) sameType.get(j));
+				}
+			}
+		}
+		allocations.end();
+		return ret.size();
+	}
+
+	/**
+	 * Finds the Entity closest to x, y
+	 * @param type Class the Entity must be an instance of, null for any Entity
+	 * @param maxDistance Furthest away the Entity can be
+	 * @param exclude Entity to ignore, usually the one asking, can be null
+	 * @return The closest Entity or null if there is none within maxDistance
+	 */
+	public Entity getNearest(float x, float y, float maxDistance, Class<? extends Entity> type, Entity exclude) {
+		return grid.nearest(x, y, maxDistance, type, exclude);
+	}
+
+	/**
+	 * Counts heap allocations made by update, including the update threads' share when setThreads() is above 1, and
+	 * by the buffer/visitor queries made from the thread that created the container. Queries Entitys make on the
+	 * update threads are counted as part of update. Turn on with getAllocations().setEnabled(true) and call
+	 * getAllocations().frame() once per frame
+	 */
+	public AllocationCounter getAllocations() {
+		return allocations;
+	}
+
+	/**
+	 * @return Store of the simple bodies updated and drawn along with the Entitys
+	 */
+	public ComponentStore getBodies() {
+		return bodies;
+	}
+
+	/**
+	 * @return Particles updated and drawn along with the Entitys
+	 */
+	public ParticleSystem getParticles() {
+		return particles;
+	}
+
+	/**
+	 * Sets what the camera sees, used to skip drawing Entitys outside of it and to put far away Entitys to sleep.
+	 * Call once per frame before updating
+	 * @param camera Camera the world is drawn with
+	 */
+	public void setView(OrthographicCamera camera) {
+		float width = camera.viewportWidth * camera.zoom;
+		float height = camera.viewportHeight * camera.zoom;
+		view.set(camera.position.x - width / 2, camera.position.y - height / 2, width, height);
+		hasView = true;
+	}
+
+	private boolean isFarFromView(Entity e) {
+		if (!hasView) {
+			return false;
+		}
+		float x = e.getPosition().x, y = e.getPosition().y;
+		return x + e.getWidth() < view.x - sleepDistance || x > view.x + view.width + sleepDistance
+				|| y + e.getHeight() < view.y - sleepDistance || y > view.y + view.height + sleepDistance;
+	}
+
+	/**
+	 * Lets Entitys far outside of the view update less often, see SLEEP_INTERVAL
+	 * @param sleepEnabled Whether Entitys may sleep
+	 * @param sleepDistance How far outside of the view an Entity has to be to sleep
+	 */
+	public void setSleep(boolean sleepEnabled, float sleepDistance) {
+		this.sleepEnabled = sleepEnabled;
+		this.sleepDistance = sleepDistance;
+	}
+
+	public boolean isSleepEnabled() {
+		return sleepEnabled;
+	}
+
+	/**
+	 * Draws all Entitys inside the view in one batch, sorted by texture so
+	 * the batch only has to flush when the texture actually changes
+	 * @param batch Batch with the projection already set, must not have been begun
+	 * @param alpha How far along the current tick is, see Entity.render
+	 */
+	public void render(SpriteBatch batch, float alpha) {
+		renderList.clear();
+		if (hasView) {
+			// an Entity's x,y is its bottom left corner, so look a bit further left and down for ones sticking in
+			float margin = maxEntitySize + 1;
+			grid.query(view.x - margin, view.y - margin, view.x + view.width, view.y + view.height, null, renderCollector);
+		} else {
+			for (int i = 0; i < entities.size(); i++) {
+				renderCollector.visit(entities.get(i));
+			}
 		}
+		culled = entities.size() - renderList.size;
+		renderList.sort(TEXTURE_ORDER);
+
+		textureSwitches = 0;
+		Texture lastTexture = null;
+		batch.begin();
+		for (int i = 0; i < renderList.size; i++) {
+			Entity e = renderList.get(i);
+			Texture texture = e.frame.getTexture();
+			if (texture != lastTexture) {
+				if (lastTexture != null) {
+					textureSwitches++;
+				}
+				lastTexture = texture;
+			}
+			e.render(batch, e.frame, alpha);
+		}
+		bodies.render(batch, alpha, hasView ? view : null);
+		particles.render(batch, alpha, hasView ? view : null);
+		batch.end();
+		renderCalls = batch.renderCalls;
+		rendered = renderList.size;
+	}
+
+	/**
+	 * @return Draw calls made by the last render
+	 */
+	public int getRenderCalls() {
+		return renderCalls;
 	}
-	
-	
+
+	/**
+	 * @return Times the texture changed during the last render
+	 */
+	public int getTextureSwitches() {
+		return textureSwitches;
+	}
+
+	/**
+	 * @return Entitys drawn by the last render
+	 */
+	public int getRenderedCount() {
+		return rendered;
+	}
+
+	/**
+	 * @return Entitys skipped by the last render, because they were out of view or had nothing to draw
+	 */
+	public int getCulledCount() {
+		return culled;
+	}
+
+	private class RenderCollector implements EntityVisitor {
+		@Override
+		public void visit(Entity e) {
+			if (hasView && !overlapsView(e)) {
+				return;
+			}
+			e.frame = e.getFrame();
+			if (e.frame != null) {
+				renderList.add(e);
+			}
+		}
+
+		private boolean overlapsView(Entity e) {
+			float x = e.getPosition().x, y = e.getPosition().y;
+			return x + e.getWidth() >= view.x && x <= view.x + view.width
+					&& y + e.getHeight() >= view.y && y <= view.y + view.height;
+		}
+	}
+
+
 }
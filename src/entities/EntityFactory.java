@@ -1,71 +1,202 @@
 package entities;
 
-import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
 
-import com.badlogic.gdx.Gdx;
-import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.g2d.Animation;
 import com.badlogic.gdx.graphics.g2d.TextureAtlas;
+import com.badlogic.gdx.graphics.g2d.TextureAtlas.AtlasRegion;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Pool;
 
-import dig.DigGame;;
+import dig.Assets;
+import dig.DigGame;
+import dig.Logger;
 
+/**
+ * Holds a set up prototype of every kind of Entity by name. New Entitys are copies of their prototype, sharing its
+ * animations, and come out of a per prototype pool so spawning and despawning doesn't allocate once the pool is warm.
+ */
 public class EntityFactory {
 	private static EntityFactory instance;
-	
+
 	public static EntityFactory getInstance() {
 		if (instance == null) {
 			instance = new EntityFactory();
 		}
 		return instance;
 	}
-	
+
+	private static final Logger log = Logger.get(DigGame.LOG);
+
+	// Frames of the explosion, in the order they play
+	private static final String[] CIRCLE_REGIONS = { "circleLarge", "circleMedium", "circleSmall" };
+
 	private Map<String, Entity> entities; // Name, Entity
-	
+	private Map<String, Pool<Entity>> pools; // Name, copies of the Entity
+	private boolean headless; // Set up without textures, nothing to release
+
 	private EntityFactory() {
 		entities = new HashMap<String, Entity>();
+		pools = new HashMap<String, Pool<Entity>>();
 		initialize();
 	}
-	
+
 	public void initialize() {
 		Entity e = null;
-		// Initialize Hero
+		if (!Assets.getInstance().isLoaded(Assets.SPRITE_ATLAS)) {
+			// headless tools only need what Heroes spawn, it just has nothing to draw
+			headless = true;
+			register("explosion", new Explosion());
+			return;
+		}
+		// every sprite is on the one page of the packed atlas, see AtlasPacker
+		TextureAtlas atlas = Assets.getInstance().acquire(Assets.SPRITE_ATLAS, TextureAtlas.class);
 
-		// load all the different textures into memory
-		TextureAtlas atlas = new TextureAtlas(new FileHandle(new File("data/heroTextures.txt")));
-		
+		// Initialize Hero
 		TextureRegion standText = atlas.findRegion("p1_stand");
 		Animation stand = new Animation(0, standText);
 		Animation jump = new Animation(0, atlas.findRegion("p1_jump"));
-		Array<TextureRegion> walking = new Array<TextureRegion>(11);
-		
-		for (int i = 1; i <= 11; i++) {
-			// i < 10 ? "0" + i : i
-			// puts a 0 in front of the number if it is less than 10 to get 01, 02, 03... 09, 10, 11
-			String regionName = "p1_walk" + (i < 10 ? "0" + i : i);
-			TextureRegion tempRegion = atlas.findRegion(regionName);
-			if (tempRegion == null) {
-				Gdx.app.log(DigGame.LOG, "Null region: " + regionName);
-			}
-			walking.add(tempRegion);
+		// the frames come in order of their index, p1_walk01 to p1_walk11 in the source atlas
+		Array<AtlasRegion> walking = atlas.findRegions("p1_walk");
+		if (walking.size == 0) {
+			log.error("No regions named p1_walk");
 		}
-		
 		Animation walk = new Animation(0.10f, walking);
 		walk.setPlayMode(Animation.LOOP);
-		
+
 		e = new Hero();
-		e.addAnimation("stand", stand);
-		e.addAnimation("jump", jump);
-		e.addAnimation("walk", walk);
-		
+		e.setAnimation(State.Standing, stand);
+		e.setAnimation(State.Jumping, jump);
+		e.setAnimation(State.Walking, walk);
+
 
 		// size into world units (1 unit == 16 pixels)
 		e.setWidth(GameConstants.SCALE * standText.getRegionWidth() / 2);
 		e.setHeight(GameConstants.SCALE * standText.getRegionHeight() / 2);
-		
-		
+		register("hero", e);
+
+		// Initialize Explosion
+		Array<TextureRegion> circles = new Array<TextureRegion>(CIRCLE_REGIONS.length);
+		for (String name : CIRCLE_REGIONS) {
+			circles.add(atlas.findRegion(name));
+		}
+		//LOOP_RANDOM doesn't seem to work as I expected it to...
+		Explosion explosion = new Explosion();
+		explosion.setAnimation(State.Exploding, new Animation(0.2f, circles, Animation.LOOP));
+
+		// a flash of fire and smoke where it goes off
+		ParticleEmitter blast = new ParticleEmitter();
+		blast.region = atlas.findRegion("particleDot");
+		blast.count = 80;
+		blast.rate = 300;
+		blast.duration = 0.15f;
+		blast.minLife = 0.3f;
+		blast.maxLife = 0.9f;
+		blast.minSpeed = 2;
+		blast.maxSpeed = 12;
+		blast.spread = 180;
+		blast.offset = 0.5f;
+		blast.gravity = 0.1f;
+		blast.damping = 0.92f;
+		blast.startSize = 0.9f;
+		blast.endSize = 0.2f;
+		blast.color = 0xffa040;
+		explosion.setBlastEmitter(blast);
+		register("explosion", explosion);
+
+		// chips thrown out of every tile that is dug out, tinted like the tile
+		ParticleEmitter debris = new ParticleEmitter();
+		debris.region = atlas.findRegion("particleChip");
+		debris.count = 8;
+		debris.minLife = 0.4f;
+		debris.maxLife = 0.8f;
+		debris.minSpeed = 2;
+		debris.maxSpeed = 6;
+		debris.spread = 60;
+		debris.offset = 0.3f;
+		debris.damping = 0.98f;
+		debris.startSize = 0.2f;
+		debris.endSize = 0.1f;
+		EntityContainer.getInstance().getParticles().setDigEmitter(debris);
+	}
+
+	/**
+	 * Releases the textures the prototypes use, the factory has to be set up again with getInstance() afterwards
+	 */
+	public void dispose() {
+		EntityFactory.instance = null;
+		EntityContainer.getInstance().getParticles().setDigEmitter(null);
+		if (!headless) {
+			Assets.getInstance().release(Assets.SPRITE_ATLAS);
+		}
+	}
+
+	/**
+	 * Adds a prototype that can then be spawned by name, replacing any prototype with the same name
+	 * @param name Name to spawn the Entity by
+	 * @param prototype Set up Entity to copy, it is never added to the world itself
+	 */
+	public void register(String name, final Entity prototype) {
+		entities.put(name, prototype);
+		pools.put(name, new Pool<Entity>() {
+			@Override
+			protected Entity newObject() {
+				Entity e = prototype.copy();
+				e.pool = this;
+				return e;
+			}
+		});
+	}
+
+	/**
+	 * @return The prototype registered under name, or null
+	 */
+	public Entity getPrototype(String name) {
+		return entities.get(name);
+	}
+
+	/**
+	 * Gets a copy of a prototype out of its pool without adding it to the world.
+	 * Synchronized since Entitys may spawn others from a parallel update, they are only freed between updates
+	 * @param name Name the prototype was registered under
+	 * @return Copy of the prototype at 0, 0
+	 */
+	public synchronized Entity obtain(String name) {
+		Pool<Entity> pool = pools.get(name);
+		if (pool == null) {
+			throw new IllegalArgumentException("No entity registered as " + name);
+		}
+		Entity e = pool.obtain();
+		// pooled Entitys were reset when freed, bring them back in line with the prototype
+		e.copyFrom(entities.get(name));
+		return e;
+	}
+
+	/**
+	 * Gets a copy of a prototype and adds it to the EntityContainer at x, y
+	 * @param name Name the prototype was registered under
+	 * @return The spawned Entity
+	 */
+	public Entity spawn(String name, float x, float y) {
+		Entity e = obtain(name);
+		e.getPosition().set(x, y);
+		e.getPreviousPosition().set(x, y);
+		EntityContainer.getInstance().add(e);
+		return e;
+	}
+
+	/**
+	 * Removes a spawned Entity from the EntityContainer and hands it back to its pool to be reused,
+	 * don't hold on to it afterwards
+	 * @param e Entity made by spawn
+	 */
+	public void despawn(Entity e) {
+		if (e.pool == null || e.despawned) {
+			return;
+		}
+		e.despawned = true;
+		EntityContainer.getInstance().remove(e);
 	}
 }
@@ -0,0 +1,12 @@
+package entities;
+
+/**
+ * Callback for EntityContainer queries that don't build a list
+ */
+public interface EntityVisitor {
+	/**
+	 * Called once for every Entity matching the query
+	 * @param e Matching Entity
+	 */
+	public void visit(Entity e);
+}
@@ -0,0 +1,73 @@
+package entities;
+
+import dig.MapResources;
+
+/**
+ * A bomb: plays its animation while the fuse burns, then blows the tiles around it out of the world, starts its
+ * blast effect and despawns. The tiles it digs out throw their own debris, see ParticleSystem.
+ */
+public class Explosion extends Entity {
+	private static final float FUSE_TIME = 1.2f; // Seconds before it goes off
+	private static final float RADIUS = 2.5f; // Tiles around the center that are blown out
+
+	private ParticleEmitter blast; // Shared with the prototype, null for no effect
+	private final BlastCommand command;
+	private boolean exploded;
+
+	public Explosion() {
+		super();
+		setState(State.Exploding);
+		setWidth(1);
+		setHeight(1);
+		command = new BlastCommand();
+	}
+
+	@Override
+	protected Entity newInstance() {
+		return new Explosion();
+	}
+
+	@Override
+	public void copyFrom(Entity prototype) {
+		super.copyFrom(prototype);
+		blast = ((Explosion) prototype).blast;
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		exploded = false;
+	}
+
+	@Override
+	public void update(float deltaTime) {
+		super.update(deltaTime);
+		if (!exploded && getStateTime() >= FUSE_TIME) {
+			exploded = true;
+			// the world is only changed once every Entity is done with it
+			command.x = getPosition().x + getWidth() / 2;
+			command.y = getPosition().y + getHeight() / 2;
+			EntityContainer.getInstance().defer(command);
+		}
+	}
+
+	/**
+	 * Sets the effect started where the bomb goes off, set it on the prototype
+	 */
+	public void setBlastEmitter(ParticleEmitter blast) {
+		this.blast = blast;
+	}
+
+	private class BlastCommand implements EntityCommand {
+		float x, y;
+
+		@Override
+		public void execute() {
+			MapResources.getInstance().digCircle(x, y, RADIUS);
+			if (blast != null) {
+				EntityContainer.getInstance().getParticles().start(blast, x, y);
+			}
+			EntityFactory.getInstance().despawn(Explosion.this);
+		}
+	}
+}
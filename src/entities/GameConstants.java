@@ -1,6 +1,6 @@
 package entities;
 
 public class GameConstants {
-	public static final float GRAVITY = -1f;
+	public static final float GRAVITY = -60f; // Change in velocity per second, -1 per tick at 60 ticks a second
 	public static final float SCALE = 1/32f;
 }
@@ -1,45 +1,65 @@
 package entities;
 
-import com.badlogic.gdx.Gdx;
-import com.badlogic.gdx.Input.Keys;
-import com.badlogic.gdx.maps.tiled.TiledMapTileLayer;
-import com.badlogic.gdx.math.Rectangle;
-
-import dig.DigGame;
+import dig.Logger;
+import dig.MapResources;
+import dig.Profiler;
 
 public class Hero extends Entity {
 	static float MAX_VELOCITY = 10f;
 	static float JUMP_VELOCITY = 25f;
 	static float DAMPING = 0.975f;
 	static float ACCEL = 15f;
-	
+
+	// update runs every tick, so at most a couple of messages a second
+	private static final Logger log = Logger.get("Hero", 0.5f);
+
 	private boolean facesRight;
 	private boolean grounded;
-	
+	private final TileCollider collider;
+	private final DigCommand dig;
+	private final BombCommand bomb;
+	private InputState input; // Held for the current tick
+	private boolean bombHeld; // Bomb was pressed last tick, one bomb per press
+
 	public Hero() {
 		super();
-		
+		setState(State.Walking);
+		facesRight = true;
+		collider = new TileCollider(MapResources.getInstance());
+		dig = new DigCommand();
+		bomb = new BombCommand();
+		input = InputState.NONE;
 	}
-	
-	public void a() {
-		return;
+
+	@Override
+	protected Entity newInstance() {
+		return new Hero();
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		facesRight = true;
+		grounded = false;
+		input = InputState.NONE;
+		bombHeld = false;
 	}
-	
+
 	public void update(float deltaTime) {
 		super.update(deltaTime);
-		
+
 		if (deltaTime == 0)
 			return;
- 
+
 		// check input and apply to velocity & state
-		if ((Gdx.input.isKeyPressed(Keys.SPACE) || Gdx.input.isKeyPressed(Keys.UP) || Gdx.input.isKeyPressed(Keys.Q)) && grounded)
+		if (input.isPressed(Action.Jump) && grounded)
 		{
 			getVelocity().y += JUMP_VELOCITY;
 			setState(State.Jumping);
 			grounded = false;
 		}
- 
-		if (Gdx.input.isKeyPressed(Keys.LEFT) || Gdx.input.isKeyPressed(Keys.A))
+
+		if (input.isPressed(Action.Left))
 		{
 			//velocity.x = -MAX_VELOCITY;
 			getVelocity().x -= ACCEL * deltaTime;
@@ -48,8 +68,8 @@ public class Hero extends Entity {
 			}
 			facesRight = false;
 		}
- 
-		if (Gdx.input.isKeyPressed(Keys.RIGHT) || Gdx.input.isKeyPressed(Keys.D))
+
+		if (input.isPressed(Action.Right))
 		{
 			//velocity.x = MAX_VELOCITY;
 			getVelocity().x += ACCEL * deltaTime;
@@ -58,18 +78,28 @@ public class Hero extends Entity {
 			}
 			facesRight = true;
 		}
- 
-		Gdx.app.log(DigGame.LOG, "velocity.x = " + getVelocity().x);
-		
+
+		// drop a bomb at our feet, spawned once the update is done like digging
+		boolean bombPressed = input.isPressed(Action.Bomb);
+		if (bombPressed && !bombHeld)
+		{
+			bomb.x = getPosition().x + getWidth() / 2 - 0.5f;
+			bomb.y = getPosition().y;
+			EntityContainer.getInstance().defer(bomb);
+		}
+		bombHeld = bombPressed;
+
+		log.debug("velocity.x = ", getVelocity().x);
+
 		// apply gravity if we are falling
-		getVelocity().add(0, GameConstants.GRAVITY);
- 
+		getVelocity().add(0, GameConstants.GRAVITY * deltaTime);
+
 		// clamp the velocity to the maximum, x-axis only
 		if (Math.abs(getVelocity().x) > MAX_VELOCITY)
 		{
 			getVelocity().x = Math.signum(getVelocity().x) * MAX_VELOCITY;
 		}
- 
+
 		// clamp the velocity to 0 if it's < 1, and set the state to standing
 		/*
 		if (Math.abs(velocity.x) < 0.001)
@@ -78,91 +108,70 @@ public class Hero extends Entity {
 			if (grounded)
 				state = State.Standing;
 		}*/
- 
-		// multiply by delta time so we know how far we go
-		// in this frame
-		getVelocity().scl(deltaTime);
- // REPLACE
-		// perform collision detection & response, on each axis, separately
-		// if the hero is moving right, check the tiles to the right of it's
-		// right bounding box edge, otherwise check the ones to the left
-		Rectangle heroRect = rectPool.obtain();
-		heroRect.set(getPosition().x, getPosition().y, WIDTH, HEIGHT);
-		int startX, startY, endX, endY;
-		if (getVelocity().x > 0)
-		{
-			startX = endX = (int) (getPosition().x + WIDTH + velocity.x);
-		}
-		else
-		{
-			startX = endX = (int) (getPosition().x + velocity.x);
-		}
-		startY = (int) (getPosition().y);
-		endY = (int) (getPosition().y + HEIGHT);
-		getTiles(startX, startY, endX, endY, tiles);
-		heroRect.x += velocity.x;
-		for (Rectangle tile : tiles)
-		{
-			if (heroRect.overlaps(tile))
-			{
-				velocity.x = 0;
-				break;
-			}
-		}
-		heroRect.x = getPosition().x;
- 
-		// if the hero is moving upwards, check the tiles to the top of it's
-		// top bounding box edge, otherwise check the ones to the bottom
-		if (velocity.y > 0)
-		{
-			startY = endY = (int) (getPosition().y + HEIGHT + velocity.y);
-		}
-		else
-		{
-			startY = endY = (int) (getPosition().y + velocity.y);
-		}
-		startX = (int) (getPosition().x);
-		endX = (int) (getPosition().x + WIDTH);
-		getTiles(startX, startY, endX, endY, tiles);
-		heroRect.y += velocity.y;
-		for (Rectangle tile : tiles)
+
+		// move through the tiles, stopping at the first one in the way on each axis
+		long start = Profiler.getInstance().start();
+		int hits = collider.move(getPosition(), getVelocity(), getWidth(), getHeight(), deltaTime);
+		Profiler.getInstance().stop(Profiler.COLLISION, start);
+		if ((hits & TileCollider.HIT_TOP) != 0)
 		{
-			if (heroRect.overlaps(tile))
-			{
-				// we actually reset the hero y-getPosition() here
-				// so it is just below/above the tile we collided with
-				// this removes bouncing :)
-				if (velocity.y > 0)
-				{
-					getPosition().y = tile.y - HEIGHT;
-					// we hit a block jumping upwards, let's destroy it!
-					TiledMapTileLayer layer = (TiledMapTileLayer) map.getLayers().get(1);
-					layer.setCell((int) tile.x, (int) tile.y, null);
-					
-				}
-				else
-				{
-					getPosition().y = tile.y + tile.height;
-					// if we hit the ground, mark us as grounded so we can jump
-					grounded = true;
-				}
-				velocity.y = 0;
-				break;
-			}
-			//prevents jumping mid air
-			else {
-				grounded = false;
-			}
+			// we hit a block jumping upwards, let's break it!
+			// the world is only changed once every Entity is done with it
+			dig.x = collider.getVerticalHitX();
+			dig.y = collider.getVerticalHitY();
+			EntityContainer.getInstance().defer(dig);
 		}
-		rectPool.free(heroRect);
- 
-		// unscale the velocity by the inverse delta time and set 
-		// the latest getPosition()
-		getPosition().add(velocity);
-		velocity.scl(1 / deltaTime);
- 
+		// if we hit the ground, mark us as grounded so we can jump, prevents jumping mid air otherwise
+		grounded = (hits & TileCollider.HIT_BOTTOM) != 0;
+
 		// Apply damping to the velocity on the x-axis so we don't
 		// walk infinitely once a key was pressed
-		velocity.x *= DAMPING;
+		getVelocity().x *= DAMPING;
+	}
+
+	@Override
+	public boolean isFlipped() {
+		// draw the Hero facing either right or left
+		return !facesRight;
+	}
+
+	public boolean isFacingRight() {
+		return facesRight;
+	}
+
+	public boolean isGrounded() {
+		return grounded;
+	}
+
+	public InputState getInput() {
+		return input;
+	}
+
+	/**
+	 * @param input What is held for the coming tick, see InputSource.poll()
+	 */
+	public void setInput(InputState input) {
+		this.input = input;
+	}
+
+	/**
+	 * Hits the tile the Hero bumped its head on, harder tiles take a few bumps
+	 */
+	private static class DigCommand implements EntityCommand {
+		int x, y;
+
+		@Override
+		public void execute() {
+			MapResources.getInstance().hit(x, y);
+		}
+	}
+
+	private static class BombCommand implements EntityCommand {
+		float x, y;
+
+		@Override
+		public void execute() {
+			EntityFactory.getInstance().spawn("explosion", x, y);
+		}
 	}
 }
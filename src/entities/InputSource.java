@@ -0,0 +1,11 @@
+package entities;
+
+/**
+ * Where a Hero's input comes from: the keyboard in the game, a script when running without a window
+ */
+public interface InputSource {
+	/**
+	 * Takes the snapshot of the Actions held for the coming tick, called once per tick before the Entitys update
+	 */
+	public InputState poll();
+}
@@ -0,0 +1,60 @@
+package entities;
+
+/**
+ * Which Actions are held during one tick. Immutable, and there is only one instance per combination of Actions, so
+ * taking a snapshot every tick allocates nothing and a snapshot can be read from any thread.
+ */
+public final class InputState {
+	private static final Action[] ACTIONS = Action.values();
+	private static final InputState[] STATES = new InputState[1 << ACTIONS.length];
+
+	static {
+		for (int bits = 0; bits < STATES.length; bits++) {
+			STATES[bits] = new InputState(bits);
+		}
+	}
+
+	/**
+	 * Nothing held
+	 */
+	public static final InputState NONE = STATES[0];
+
+	/**
+	 * @param bits Bit 1 << action.ordinal() set for every Action held
+	 */
+	public static InputState of(int bits) {
+		return STATES[bits & (STATES.length - 1)];
+	}
+
+	public static int bit(Action action) {
+		return 1 << action.ordinal();
+	}
+
+	private final int bits;
+
+	private InputState(int bits) {
+		this.bits = bits;
+	}
+
+	public boolean isPressed(Action action) {
+		return (bits & bit(action)) != 0;
+	}
+
+	/**
+	 * @return Bit 1 << action.ordinal() set for every Action held
+	 */
+	public int getBits() {
+		return bits;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder("InputState[");
+		for (int i = 0; i < ACTIONS.length; i++) {
+			if ((bits & (1 << i)) != 0) {
+				text.append(text.length() > 11 ? " " : "").append(ACTIONS[i]);
+			}
+		}
+		return text.append(']').toString();
+	}
+}
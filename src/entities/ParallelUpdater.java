@@ -0,0 +1,192 @@
+package entities;
+
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * Updates the Entitys of an EntityContainer on several threads. The entity list is cut into index ranges
+ * (partitions) that the threads take one at a time until none are left, so a thread that got cheap Entitys takes
+ * over more partitions. The calling thread works along with the worker threads and update() returns once every
+ * partition is done. Each partition buffers the adds, removes and commands made while updating it, the container
+ * applies them in partition order afterwards so the result doesn't depend on which thread ran what.
+ * While the container counts allocations each worker measures what it allocates during an update, and the total is
+ * added to the container's AllocationCounter, which only sees the calling thread by itself.
+ */
+class ParallelUpdater {
+	// Partitions per thread, more of them balance the load better but cost more claiming
+	private static final int PARTITIONS_PER_THREAD = 4;
+	// Fewest Entitys in a partition, smaller ones don't make up for the claiming
+	private static final int MIN_PARTITION_SIZE = 64;
+
+	/**
+	 * A range of the entity list and what its Entitys asked for while being updated
+	 */
+	static class Partition {
+		final Array<Entity> adds = new Array<Entity>(false, 8);
+		final Array<Entity> removals = new Array<Entity>(false, 8);
+		final Array<EntityCommand> commands = new Array<EntityCommand>(8);
+	}
+
+	private final EntityContainer container;
+	private final int threads;
+	private final Thread[] workers;
+	private final CyclicBarrier start; // Every thread waits here for the next update
+	private final CyclicBarrier done; // And here for the others to finish it
+	private final AtomicInteger nextPartition;
+	private final ThreadLocal<Partition> current; // Partition being updated by a thread
+	private final long[] workerBytes; // Worker, bytes it allocated during the last update
+	private final Array<Partition> partitions;
+
+	// Set by update() before the start barrier, the barrier makes them visible to the workers
+	private int partitionCount;
+	private int partitionSize;
+	private int entityCount;
+	private float deltaTime;
+	private boolean countAllocations;
+	private volatile boolean stopped;
+	private volatile Throwable failure;
+
+	/**
+	 * @param threads Number of threads updating, including the one calling update()
+	 */
+	ParallelUpdater(EntityContainer container, int threads) {
+		this.container = container;
+		this.threads = threads;
+		start = new CyclicBarrier(threads);
+		done = new CyclicBarrier(threads);
+		nextPartition = new AtomicInteger();
+		current = new ThreadLocal<Partition>();
+		partitions = new Array<Partition>(threads * PARTITIONS_PER_THREAD);
+		for (int i = 0; i < threads * PARTITIONS_PER_THREAD; i++) {
+			partitions.add(new Partition());
+		}
+
+		workers = new Thread[threads - 1];
+		workerBytes = new long[threads - 1];
+		for (int i = 0; i < workers.length; i++) {
+			final int worker = i;
+			workers[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					while (true) {
+						await(start);
+						if (stopped) {
+							return;
+						}
+						if (countAllocations) {
+							// only around the work, the barriers allocate when they block
+							long before = AllocationCounter.getCurrentThreadBytes();
+							work();
+							workerBytes[worker] = AllocationCounter.getCurrentThreadBytes() - before;
+						} else {
+							work();
+						}
+						await(done);
+					}
+				}
+			}, "entity-update-" + (i + 1));
+			// don't keep the game running if dispose is never called
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+
+	/**
+	 * Updates the first entityCount Entitys of the container, returns when all of them are done
+	 * @param allocations Counter the workers' allocations are added to, the calling thread's are counted by it
+	 */
+	void update(int entityCount, float deltaTime, AllocationCounter allocations) {
+		this.entityCount = entityCount;
+		this.deltaTime = deltaTime;
+		countAllocations = allocations.isEnabled();
+		int count = (entityCount + MIN_PARTITION_SIZE - 1) / MIN_PARTITION_SIZE;
+		partitionCount = Math.max(1, Math.min(partitions.size, count));
+		partitionSize = (entityCount + partitionCount - 1) / partitionCount;
+		nextPartition.set(0);
+		failure = null;
+
+		await(start);
+		work();
+		await(done);
+		if (countAllocations) {
+			long bytes = 0;
+			for (int i = 0; i < workerBytes.length; i++) {
+				bytes += workerBytes[i];
+				workerBytes[i] = 0;
+			}
+			allocations.add(bytes);
+		}
+
+		Throwable t = failure;
+		if (t != null) {
+			if (t instanceof RuntimeException) {
+				throw (RuntimeException) t;
+			}
+			if (t instanceof Error) {
+				throw (Error) t;
+			}
+			throw new RuntimeException(t);
+		}
+	}
+
+	private void work() {
+		int index;
+		while ((index = nextPartition.getAndIncrement()) < partitionCount) {
+			Partition partition = partitions.get(index);
+			current.set(partition);
+			int end = Math.min(entityCount, (index + 1) * partitionSize);
+			try {
+				for (int i = index * partitionSize; i < end; i++) {
+					container.updateEntity(i, deltaTime);
+				}
+			} catch (Throwable t) {
+				failure = t;
+			}
+			current.set(null);
+		}
+	}
+
+	private static void await(CyclicBarrier barrier) {
+		try {
+			barrier.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while updating entities", e);
+		} catch (BrokenBarrierException e) {
+			throw new IllegalStateException("Entity update threads are out of step", e);
+		}
+	}
+
+	/**
+	 * @return Partition the calling thread is updating, null if it isn't updating one
+	 */
+	Partition current() {
+		return current.get();
+	}
+
+	/**
+	 * @return Number of partitions the last update was cut into, partitions past it are empty
+	 */
+	int getPartitionCount() {
+		return partitionCount;
+	}
+
+	Partition getPartition(int index) {
+		return partitions.get(index);
+	}
+
+	int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Stops the worker threads, the updater can't be used afterwards
+	 */
+	void dispose() {
+		stopped = true;
+		await(start);
+	}
+}
@@ -0,0 +1,24 @@
+package entities;
+
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+
+/**
+ * What a kind of effect looks like: how many particles it gives off, for how long, and how they move, shrink and
+ * fade. Set one up once per kind of effect and hand it to ParticleSystem.start() whenever the effect happens, the
+ * emitter itself is shared and never changes while it runs. Angles are in degrees, 90 is up.
+ */
+public class ParticleEmitter {
+	public TextureRegion region; // What every particle draws, the same page as the Entitys keeps it one batch
+	public int count = 10; // Particles given off at once when the emitter starts
+	public float rate; // Particles per second after that
+	public float duration; // Seconds the emitter keeps giving off particles at rate, 0 for a single burst
+	public float minLife = 0.5f, maxLife = 1f; // Seconds a particle lives
+	public float minSpeed = 1, maxSpeed = 4; // Tiles per second
+	public float angle = 90, spread = 180; // Particles leave at angle plus or minus spread
+	public float offset; // Particles start up to this far from the emitter on either axis
+	public float gravity = 1; // Times GameConstants.GRAVITY, the particles' change in velocity per second
+	public float damping = 1; // Multiplied into the particles' velocity every tick
+	public float startSize = 0.25f, endSize = 0; // Width and height at birth and at death, in tiles
+	public int color = 0xffffff; // RGB tint, multiplied by the tint the emitter is started with
+	public float alpha = 1; // Alpha at birth, fades out to 0 at death
+}
@@ -0,0 +1,317 @@
+package entities;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Rectangle;
+
+import dig.Chunk;
+import dig.MapListener;
+import dig.Tiles;
+
+/**
+ * Short lived particles for dust, debris and explosions. Particles and the emitters giving them off live in
+ * columns of primitive arrays of a fixed capacity, allocated once, so thousands of particles a second come and go
+ * without creating an object or any garbage. When the arrays are full new particles and emitters are dropped, they
+ * are only eye candy.
+ * Particles don't collide and don't change the world, they are updated by the EntityContainer after the bodies and
+ * drawn in the same batch as the Entitys, from the same atlas page, so all of them together cost one draw call.
+ * Listens to the world to throw debris from every tile that is dug out, see setDigEmitter().
+ */
+public class ParticleSystem implements MapListener {
+	public static final int DEFAULT_CAPACITY = 4096; // Particles alive at once
+	public static final int MAX_EMITTERS = 64; // Emitters running at once
+
+	// Particles, removed by moving the last one into the hole like ComponentStore does
+	private final int capacity;
+	private int size;
+	private final float[] x, y;
+	private final float[] previousX, previousY;
+	private final float[] velocityX, velocityY;
+	private final float[] life; // Seconds left
+	private final float[] lifeScale; // 1 / total life, to turn life left into how far along the particle is
+	private final int[] rgb; // Tint, emitter color times the tint it was started with
+	private final ParticleEmitter[] emitters; // Emitter the particle came from, for its size, fade and motion
+
+	// Running emitters, also packed at the front
+	private int emitterCount;
+	private final ParticleEmitter[] running;
+	private final float[] emitterX, emitterY;
+	private final float[] emitterTime; // Seconds left
+	private final float[] emitterDue; // Particles owed, the fraction carries over to the next tick
+	private final int[] emitterTint;
+
+	private ParticleEmitter digEmitter;
+	private final int[] tileColors; // Tile id, RGB tint of the debris it breaks into
+	private int seed = 0x2545f491; // Random state, xorshift
+	private int dropped; // Particles that didn't fit, since the last clear
+	private int rendered; // Particles drawn by the last render
+
+	public ParticleSystem(int capacity) {
+		this.capacity = capacity;
+		x = new float[capacity];
+		y = new float[capacity];
+		previousX = new float[capacity];
+		previousY = new float[capacity];
+		velocityX = new float[capacity];
+		velocityY = new float[capacity];
+		life = new float[capacity];
+		lifeScale = new float[capacity];
+		rgb = new int[capacity];
+		emitters = new ParticleEmitter[capacity];
+		running = new ParticleEmitter[MAX_EMITTERS];
+		emitterX = new float[MAX_EMITTERS];
+		emitterY = new float[MAX_EMITTERS];
+		emitterTime = new float[MAX_EMITTERS];
+		emitterDue = new float[MAX_EMITTERS];
+		emitterTint = new int[MAX_EMITTERS];
+		tileColors = new int[Tiles.MAX_ID + 1];
+		for (int id = 0; id < tileColors.length; id++) {
+			tileColors[id] = 0xffffff;
+		}
+	}
+
+	/**
+	 * Starts an effect at x, y: gives off the emitter's burst right away, and keeps giving off particles for its
+	 * duration
+	 * @param tint RGB multiplied into the emitter's color
+	 */
+	public void start(ParticleEmitter emitter, float x, float y, int tint) {
+		for (int i = 0; i < emitter.count; i++) {
+			spawn(emitter, x, y, tint);
+		}
+		if (emitter.duration <= 0 || emitter.rate <= 0) {
+			return;
+		}
+		if (emitterCount == MAX_EMITTERS) {
+			return;
+		}
+		int e = emitterCount++;
+		running[e] = emitter;
+		emitterX[e] = x;
+		emitterY[e] = y;
+		emitterTime[e] = emitter.duration;
+		emitterDue[e] = 0;
+		emitterTint[e] = tint;
+	}
+
+	public void start(ParticleEmitter emitter, float x, float y) {
+		start(emitter, x, y, 0xffffff);
+	}
+
+	private void spawn(ParticleEmitter emitter, float emitX, float emitY, int tint) {
+		if (size == capacity) {
+			dropped++;
+			return;
+		}
+		int i = size++;
+		x[i] = previousX[i] = emitX + (random() * 2 - 1) * emitter.offset;
+		y[i] = previousY[i] = emitY + (random() * 2 - 1) * emitter.offset;
+		float angle = (emitter.angle + (random() * 2 - 1) * emitter.spread) * MathUtils.degreesToRadians;
+		float speed = emitter.minSpeed + random() * (emitter.maxSpeed - emitter.minSpeed);
+		velocityX[i] = (float) Math.cos(angle) * speed;
+		velocityY[i] = (float) Math.sin(angle) * speed;
+		float total = emitter.minLife + random() * (emitter.maxLife - emitter.minLife);
+		life[i] = total;
+		lifeScale[i] = 1 / Math.max(total, 0.001f);
+		rgb[i] = multiply(emitter.color, tint);
+		emitters[i] = emitter;
+	}
+
+	/**
+	 * Runs the emitters and moves every particle one tick, one property at a time like ComponentStore
+	 */
+	public void update(float deltaTime) {
+		for (int e = emitterCount - 1; e >= 0; e--) {
+			ParticleEmitter emitter = running[e];
+			float due = emitterDue[e] + emitter.rate * Math.min(deltaTime, emitterTime[e]);
+			int count = (int) due;
+			emitterDue[e] = due - count;
+			for (int i = 0; i < count; i++) {
+				spawn(emitter, emitterX[e], emitterY[e], emitterTint[e]);
+			}
+			emitterTime[e] -= deltaTime;
+			if (emitterTime[e] <= 0) {
+				removeEmitter(e);
+			}
+		}
+
+		int n = size;
+		for (int i = 0; i < n; i++) {
+			life[i] -= deltaTime;
+		}
+		System.arraycopy(x, 0, previousX, 0, n);
+		System.arraycopy(y, 0, previousY, 0, n);
+		for (int i = 0; i < n; i++) {
+			ParticleEmitter emitter = emitters[i];
+			// gravity is per second like for the bodies, damping is per tick
+			velocityY[i] = (velocityY[i] + GameConstants.GRAVITY * emitter.gravity * deltaTime) * emitter.damping;
+			velocityX[i] *= emitter.damping;
+			x[i] += velocityX[i] * deltaTime;
+			y[i] += velocityY[i] * deltaTime;
+		}
+		// backwards, so removing only ever moves in a particle that was already checked
+		for (int i = n - 1; i >= 0; i--) {
+			if (life[i] <= 0) {
+				remove(i);
+			}
+		}
+	}
+
+	private void remove(int i) {
+		int last = --size;
+		if (i != last) {
+			x[i] = x[last];
+			y[i] = y[last];
+			previousX[i] = previousX[last];
+			previousY[i] = previousY[last];
+			velocityX[i] = velocityX[last];
+			velocityY[i] = velocityY[last];
+			life[i] = life[last];
+			lifeScale[i] = lifeScale[last];
+			rgb[i] = rgb[last];
+			emitters[i] = emitters[last];
+		}
+		emitters[last] = null;
+	}
+
+	private void removeEmitter(int e) {
+		int last = --emitterCount;
+		if (e != last) {
+			running[e] = running[last];
+			emitterX[e] = emitterX[last];
+			emitterY[e] = emitterY[last];
+			emitterTime[e] = emitterTime[last];
+			emitterDue[e] = emitterDue[last];
+			emitterTint[e] = emitterTint[last];
+		}
+		running[last] = null;
+	}
+
+	/**
+	 * Draws the particles inside view, centered on their position, shrinking and fading as they age. The batch must
+	 * have been begun, its color is white again afterwards
+	 * @param view What the camera sees, null to draw everything
+	 */
+	void render(SpriteBatch batch, float alpha, Rectangle view) {
+		rendered = 0;
+		for (int i = 0; i < size; i++) {
+			ParticleEmitter emitter = emitters[i];
+			if (emitter.region == null) {
+				continue;
+			}
+			float age = 1 - life[i] * lifeScale[i];
+			float particleSize = emitter.startSize + (emitter.endSize - emitter.startSize) * age;
+			float half = particleSize / 2;
+			float drawX = previousX[i] + (x[i] - previousX[i]) * alpha - half;
+			float drawY = previousY[i] + (y[i] - previousY[i]) * alpha - half;
+			if (view != null && (drawX + particleSize < view.x || drawX > view.x + view.width
+					|| drawY + particleSize < view.y || drawY > view.y + view.height)) {
+				continue;
+			}
+			int color = rgb[i];
+			int a = (int) (emitter.alpha * (1 - age) * 255);
+			batch.setColor(Color.toFloatBits(color >>> 16, (color >>> 8) & 0xff, color & 0xff, Math.max(a, 0)));
+			batch.draw(emitter.region, drawX, drawY, particleSize, particleSize);
+			rendered++;
+		}
+		batch.setColor(1, 1, 1, 1);
+	}
+
+	/**
+	 * Removes every particle and emitter
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			emitters[i] = null;
+		}
+		for (int e = 0; e < emitterCount; e++) {
+			running[e] = null;
+		}
+		size = 0;
+		emitterCount = 0;
+		dropped = 0;
+	}
+
+	/**
+	 * Sets the effect started at every tile that is dug out, tinted with the tile's color, null for none
+	 */
+	public void setDigEmitter(ParticleEmitter emitter) {
+		digEmitter = emitter;
+	}
+
+	/**
+	 * Sets the tint of the debris a tile breaks into
+	 * @param rgb RGB color, white by default
+	 */
+	public void setTileColor(int id, int rgb) {
+		tileColors[id] = rgb;
+	}
+
+	/**
+	 * @return Particles alive
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return Emitters still giving off particles
+	 */
+	public int getEmitterCount() {
+		return emitterCount;
+	}
+
+	/**
+	 * @return Particles that didn't fit in the arrays since the last clear
+	 */
+	public int getDroppedCount() {
+		return dropped;
+	}
+
+	/**
+	 * @return Particles drawn by the last render
+	 */
+	public int getRenderedCount() {
+		return rendered;
+	}
+
+	@Override
+	public void chunkLoaded(Chunk chunk) {
+	}
+
+	@Override
+	public void chunkUnloaded(Chunk chunk) {
+	}
+
+	@Override
+	public void tilesChanged(Chunk chunk, int x1, int y1, int x2, int y2) {
+	}
+
+	@Override
+	public void tileDug(int x, int y, int id) {
+		if (digEmitter != null) {
+			start(digEmitter, x + 0.5f, y + 0.5f, tileColors[id]);
+		}
+	}
+
+	/**
+	 * @return Each channel of a times b, as if both were colors from 0 to 1
+	 */
+	private static int multiply(int a, int b) {
+		int red = ((a >>> 16) & 0xff) * ((b >>> 16) & 0xff) / 255;
+		int green = ((a >>> 8) & 0xff) * ((b >>> 8) & 0xff) / 255;
+		int blue = (a & 0xff) * (b & 0xff) / 255;
+		return (red << 16) | (green << 8) | blue;
+	}
+
+	/**
+	 * @return Random number from 0 (inclusive) to 1 (exclusive)
+	 */
+	private float random() {
+		seed ^= seed << 13;
+		seed ^= seed >>> 17;
+		seed ^= seed << 5;
+		return (seed >>> 8) / (float) (1 << 24);
+	}
+}
@@ -0,0 +1,194 @@
+package entities;
+
+import java.util.List;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.LongMap;
+import com.badlogic.gdx.utils.Pool;
+
+/**
+ * Uniform grid over the world that buckets Entitys by the cell their position is in. Only cells that hold an Entity
+ * exist, so the grid covers an unbounded world. Region queries only look at the cells overlapping the region.
+ */
+public class SpatialGrid {
+	private final float cellSize;
+	private final LongMap<Array<Entity>> cells; // Cell key, Entitys in that cell
+	private final Pool<Array<Entity>> cellPool;
+	// Reused so list queries don't allocate, one per thread since Entitys query the grid from the update threads
+	private final ThreadLocal<ListCollector> collectors = new ThreadLocal<ListCollector>() {
+		@Override
+		protected ListCollector initialValue() {
+			return new ListCollector();
+		}
+	};
+
+	/**
+	 * @param cellSize Width and height of a cell in world units, around the size of a typical query works well
+	 */
+	public SpatialGrid(float cellSize) {
+		this.cellSize = cellSize;
+		this.cells = new LongMap<Array<Entity>>();
+		this.cellPool = new Pool<Array<Entity>>() {
+			@Override
+			protected Array<Entity> newObject() {
+				return new Array<Entity>(false, 8);
+			}
+		};
+	}
+
+	private static long key(int cellX, int cellY) {
+		return ((long) cellX << 32) | (cellY & 0xFFFFFFFFL);
+	}
+
+	private int toCell(float coordinate) {
+		return (int) Math.floor(coordinate / cellSize);
+	}
+
+	public void insert(Entity e) {
+		Vector2 position = e.getPosition();
+		e.gridCell = key(toCell(position.x), toCell(position.y));
+		e.inGrid = true;
+		Array<Entity> cell = cells.get(e.gridCell);
+		if (cell == null) {
+			cell = cellPool.obtain();
+			cells.put(e.gridCell, cell);
+		}
+		cell.add(e);
+	}
+
+	public void remove(Entity e) {
+		if (!e.inGrid) {
+			return;
+		}
+		Array<Entity> cell = cells.get(e.gridCell);
+		if (cell != null) {
+			cell.removeValue(e, true);
+			if (cell.size == 0) {
+				cells.remove(e.gridCell);
+				cellPool.free(cell);
+			}
+		}
+		e.inGrid = false;
+	}
+
+	/**
+	 * Moves the Entity to a different cell if its position has left its current one, call after it moves
+	 */
+	public void update(Entity e) {
+		Vector2 position = e.getPosition();
+		long cell = key(toCell(position.x), toCell(position.y));
+		if (!e.inGrid || cell != e.gridCell) {
+			remove(e);
+			insert(e);
+		}
+	}
+
+	/**
+	 * Adds all Entitys of the given type whose x, y are within (x1, y1) - (x2, y2) to ret
+	 * @param type Class the Entitys must be an instance of, null for any Entity
+	 */
+	public void query(float x1, float y1, float x2, float y2, Class<? extends Entity> type, List<? super Entity> ret) {
+		ListCollector collector = collectors.get();
+		collector.list = ret;
+		query(x1, y1, x2, y2, type, collector);
+		collector.list = null;
+	}
+
+	/**
+	 * Calls visitor for all Entitys of the given type whose x, y are within (x1, y1) - (x2, y2)
+	 * @param type Class the Entitys must be an instance of, null for any Entity
+	 */
+	public void query(float x1, float y1, float x2, float y2, Class<? extends Entity> type, EntityVisitor visitor) {
+		int minX = toCell(x1), minY = toCell(y1);
+		int maxX = toCell(x2), maxY = toCell(y2);
+		for (int cellY = minY; cellY <= maxY; cellY++) {
+			for (int cellX = minX; cellX <= maxX; cellX++) {
+				Array<Entity> cell = cells.get(key(cellX, cellY));
+				if (cell == null) {
+					continue;
+				}
+				// cells on the edge of the region can be partially outside of it
+				boolean edge = cellX == minX || cellX == maxX || cellY == minY || cellY == maxY;
+				for (int i = 0; i < cell.size; i++) {
+					Entity e = cell.get(i);
+					if (type != null && !type.isInstance(e)) {
+						continue;
+					}
+					if (edge) {
+						Vector2 position = e.getPosition();
+						if (position.x < x1 || position.x > x2 || position.y < y1 || position.y > y2) {
+							continue;
+						}
+					}
+					visitor.visit(e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Searches outwards from x, y one ring of cells at a time
+	 * @param type Class the Entity must be an instance of, null for any Entity
+	 * @param maxDistance Furthest away an Entity can be to be found
+	 * @param exclude Entity to skip, usually the one asking, can be null
+	 * @return Closest Entity or null if there are none within maxDistance
+	 */
+	public Entity nearest(float x, float y, float maxDistance, Class<? extends Entity> type, Entity exclude) {
+		int centerX = toCell(x), centerY = toCell(y);
+		int maxRing = (int) Math.ceil(maxDistance / cellSize);
+		Entity best = null;
+		float bestDistance2 = maxDistance * maxDistance;
+		for (int ring = 0; ring <= maxRing; ring++) {
+			// every cell in this ring is at least (ring - 1) cells away, nothing further out can be closer
+			if (best != null) {
+				float ringDistance = (ring - 1) * cellSize;
+				if (ringDistance > 0 && ringDistance * ringDistance > bestDistance2) {
+					break;
+				}
+			}
+			for (int cellY = centerY - ring; cellY <= centerY + ring; cellY++) {
+				boolean fullRow = cellY == centerY - ring || cellY == centerY + ring;
+				int step = fullRow || ring == 0 ? 1 : ring * 2;
+				for (int cellX = centerX - ring; cellX <= centerX + ring; cellX += step) {
+					Array<Entity> cell = cells.get(key(cellX, cellY));
+					if (cell == null) {
+						continue;
+					}
+					for (int i = 0; i < cell.size; i++) {
+						Entity e = cell.get(i);
+						if (e == exclude || (type != null && !type.isInstance(e))) {
+							continue;
+						}
+						float distance2 = e.getPosition().dst2(x, y);
+						if (distance2 <= bestDistance2) {
+							bestDistance2 = distance2;
+							best = e;
+						}
+					}
+				}
+			}
+		}
+		return best;
+	}
+
+	public void clear() {
+		for (Array<Entity> cell : cells.values()) {
+			for (int i = 0; i < cell.size; i++) {
+				cell.get(i).inGrid = false;
+			}
+			cell.clear();
+			cellPool.free(cell);
+		}
+		cells.clear();
+	}
+
+	private static class ListCollector implements EntityVisitor {
+		List<? super Entity> list;
+
+		@Override
+		public void visit(Entity e) {
+			list.add(e);
+		}
+	}
+}
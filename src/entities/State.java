@@ -1,5 +1,5 @@
 package entities;
 
 public enum State {
-	Standing, Walking, Jumping
+	Standing, Walking, Jumping, Exploding
 }
@@ -0,0 +1,206 @@
+package entities;
+
+import com.badlogic.gdx.math.Vector2;
+
+import dig.Chunk;
+import dig.MapResources;
+
+/**
+ * Moves axis aligned boxes through the tile grid, stopping them at the first solid tile in their path.
+ * Each axis is swept separately over only the columns/rows the box passes through, reading the solid bit straight
+ * out of the chunks' cells, so no tile rectangles are created and fast boxes can't tunnel through thin walls.
+ * A box nearly always stays within one chunk, so the chunk last looked up is kept for the rest of the move.
+ * Holds the tiles hit by the last move, so give every Entity (or thread) its own collider.
+ */
+public class TileCollider {
+	// Flags returned by move(), which sides of the box hit a tile
+	public static final int HIT_LEFT = 1;
+	public static final int HIT_RIGHT = 2;
+	public static final int HIT_BOTTOM = 4;
+	public static final int HIT_TOP = 8;
+
+	private final MapResources world;
+	private int horizontalHitX, horizontalHitY; // First tile hit on the x axis during the last move
+	private int verticalHitX, verticalHitY; // First tile hit on the y axis during the last move
+	private boolean blocked; // Whether the last sweep stopped at a tile
+
+	// The chunk isSolid() looked up last, only kept during one move since chunks are paged between ticks
+	private Chunk chunk;
+	private int chunkX, chunkY;
+	private boolean chunkValid;
+
+	public TileCollider(MapResources world) {
+		this.world = world;
+	}
+
+	/**
+	 * Moves the box at position by velocity * deltaTime, first along x then along y. Velocity on an axis is set to 0
+	 * if the box hits a tile on that axis, position is left touching the tile.
+	 * @param position Bottom left corner of the box, updated
+	 * @param velocity Velocity in units per second, updated
+	 * @param width Width of the box
+	 * @param height Height of the box
+	 * @param deltaTime Time to move for
+	 * @return HIT_* flags of the sides that hit something, 0 if nothing was hit
+	 */
+	public int move(Vector2 position, Vector2 velocity, float width, float height, float deltaTime) {
+		int hits = 0;
+		chunkValid = false;
+
+		float dx = velocity.x * deltaTime;
+		if (dx != 0) {
+			float x = sweepX(position.x, position.y, width, height, dx);
+			if (blocked) {
+				hits |= dx > 0 ? HIT_RIGHT : HIT_LEFT;
+				velocity.x = 0;
+			}
+			position.x = x;
+		}
+
+		float dy = velocity.y * deltaTime;
+		if (dy != 0) {
+			float y = sweepY(position.x, position.y, width, height, dy);
+			if (blocked) {
+				hits |= dy > 0 ? HIT_TOP : HIT_BOTTOM;
+				velocity.y = 0;
+			}
+			position.y = y;
+		}
+		chunk = null;
+		return hits;
+	}
+
+	/**
+	 * @return New x of the box after moving it dx along the x axis
+	 */
+	private float sweepX(float x, float y, float width, float height, float dx) {
+		int startRow = (int) Math.floor(y);
+		int endRow = (int) Math.ceil(y + height) - 1;
+		if (dx > 0) {
+			// columns from the first one right of the box to the last one the moved box overlaps
+			int end = (int) Math.ceil(x + width + dx) - 1;
+			for (int column = (int) Math.ceil(x + width); column <= end; column++) {
+				if (isColumnSolid(column, startRow, endRow)) {
+					horizontalHitX = column;
+					blocked = true;
+					return column - width;
+				}
+			}
+		} else {
+			int end = (int) Math.floor(x + dx);
+			for (int column = (int) Math.floor(x) - 1; column >= end; column--) {
+				if (isColumnSolid(column, startRow, endRow)) {
+					horizontalHitX = column;
+					blocked = true;
+					return column + 1;
+				}
+			}
+		}
+		blocked = false;
+		return x + dx;
+	}
+
+	/**
+	 * @return New y of the box after moving it dy along the y axis
+	 */
+	private float sweepY(float x, float y, float width, float height, float dy) {
+		int startColumn = (int) Math.floor(x);
+		int endColumn = (int) Math.ceil(x + width) - 1;
+		if (dy > 0) {
+			int end = (int) Math.ceil(y + height + dy) - 1;
+			for (int row = (int) Math.ceil(y + height); row <= end; row++) {
+				if (isRowSolid(row, startColumn, endColumn)) {
+					verticalHitY = row;
+					blocked = true;
+					return row - height;
+				}
+			}
+		} else {
+			int end = (int) Math.floor(y + dy);
+			for (int row = (int) Math.floor(y) - 1; row >= end; row--) {
+				if (isRowSolid(row, startColumn, endColumn)) {
+					verticalHitY = row;
+					blocked = true;
+					return row + 1;
+				}
+			}
+		}
+		blocked = false;
+		return y + dy;
+	}
+
+	private boolean isColumnSolid(int column, int startRow, int endRow) {
+		for (int row = startRow; row <= endRow; row++) {
+			if (isSolid(column, row)) {
+				horizontalHitY = row;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean isRowSolid(int row, int startColumn, int endColumn) {
+		for (int column = startColumn; column <= endColumn; column++) {
+			if (isSolid(column, row)) {
+				verticalHitX = column;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean isSolid(int x, int y) {
+		int cx = Chunk.toChunk(x), cy = Chunk.toChunk(y);
+		if (!chunkValid || cx != chunkX || cy != chunkY) {
+			chunk = world.getChunk(cx, cy);
+			chunkX = cx;
+			chunkY = cy;
+			chunkValid = true;
+		}
+		// tiles that aren't loaded don't block
+		return chunk != null && chunk.isSolid(x & Chunk.MASK, y & Chunk.MASK);
+	}
+
+	/**
+	 * @return Whether a box at x, y overlaps any solid tile
+	 */
+	public boolean overlaps(float x, float y, float width, float height) {
+		chunkValid = false;
+		int startRow = (int) Math.floor(y);
+		int endRow = (int) Math.ceil(y + height) - 1;
+		boolean overlaps = false;
+		for (int column = (int) Math.floor(x); column <= (int) Math.ceil(x + width) - 1 && !overlaps; column++) {
+			overlaps = isColumnSolid(column, startRow, endRow);
+		}
+		chunk = null;
+		return overlaps;
+	}
+
+	/**
+	 * @return X of the tile hit on the x axis by the last move that returned HIT_LEFT or HIT_RIGHT
+	 */
+	public int getHorizontalHitX() {
+		return horizontalHitX;
+	}
+
+	/**
+	 * @return Y of the tile hit on the x axis by the last move that returned HIT_LEFT or HIT_RIGHT
+	 */
+	public int getHorizontalHitY() {
+		return horizontalHitY;
+	}
+
+	/**
+	 * @return X of the tile hit on the y axis by the last move that returned HIT_TOP or HIT_BOTTOM
+	 */
+	public int getVerticalHitX() {
+		return verticalHitX;
+	}
+
+	/**
+	 * @return Y of the tile hit on the y axis by the last move that returned HIT_TOP or HIT_BOTTOM
+	 */
+	public int getVerticalHitY() {
+		return verticalHitY;
+	}
+}